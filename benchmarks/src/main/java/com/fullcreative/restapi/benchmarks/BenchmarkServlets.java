@@ -0,0 +1,160 @@
+package com.fullcreative.restapi.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * <p>
+ * The smallest HttpServletRequest and HttpServletResponse the benchmarked
+ * methods run with. Only the methods they call are implemented, anything else
+ * throws UnsupportedOperationException so a change that reads more of the
+ * request or response is noticed.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+final class BenchmarkServlets {
+
+	private BenchmarkServlets() {
+	}
+
+	/**
+	 * @param body - the request body
+	 * @return HttpServletRequest - a request with the body and no parameters
+	 */
+	static HttpServletRequest request(byte[] body) {
+		ByteArrayInputStream bodyStream = new ByteArrayInputStream(body);
+		ServletInputStream inputStream = new ServletInputStream() {
+			@Override
+			public int read() {
+				return bodyStream.read();
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) {
+				return bodyStream.read(buffer, offset, length);
+			}
+
+			@Override
+			public boolean isFinished() {
+				return bodyStream.available() == 0;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setReadListener(ReadListener readListener) {
+				throw new UnsupportedOperationException();
+			}
+		};
+		return new HttpServletRequestWrapper(unsupported(HttpServletRequest.class)) {
+			@Override
+			public ServletInputStream getInputStream() {
+				return inputStream;
+			}
+
+			@Override
+			public int getContentLength() {
+				return body.length;
+			}
+
+			@Override
+			public long getContentLengthLong() {
+				return body.length;
+			}
+
+			@Override
+			public String getCharacterEncoding() {
+				return null;
+			}
+
+			@Override
+			public String getQueryString() {
+				return null;
+			}
+
+			@Override
+			public String getParameter(String name) {
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * A response that throws its body away. It keeps no state, so one instance
+	 * is shared by all the invocations of a benchmark.
+	 * </p>
+	 */
+	static class DiscardingResponse extends HttpServletResponseWrapper {
+		private final ServletOutputStream outputStream = new ServletOutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] buffer, int offset, int length) {
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener writeListener) {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		DiscardingResponse() {
+			super(unsupported(HttpServletResponse.class));
+		}
+
+		@Override
+		public void setStatus(int sc) {
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+		}
+
+		@Override
+		public void setDateHeader(String name, long date) {
+		}
+
+		@Override
+		public void setContentType(String type) {
+		}
+
+		@Override
+		public void setContentLength(int len) {
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			return outputStream;
+		}
+	}
+
+	private static <T> T unsupported(Class<T> type) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, arguments) -> {
+					throw new UnsupportedOperationException(method.getName());
+				}));
+	}
+}
@@ -0,0 +1,105 @@
+package com.fullcreative.restapi.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.fullcreative.restapi.models.Book;
+import com.fullcreative.restapi.utilities.BooksControllerUtilities;
+import com.fullcreative.restapi.utilities.BooksGson;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+/**
+ * <p>
+ * The sample Books of BooksModel.json, as request bodies, Books, Entities and
+ * response maps. The file is read from <code>books.samples</code>, by default
+ * from the project directory.
+ * </p>
+ * <p>
+ * Every benchmark thread has its own samples and hands them out in turn, so a
+ * score is the average over all the samples.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+@State(Scope.Thread)
+public class BooksSamples {
+
+	private static final String SAMPLES = System.getProperty("books.samples",
+			"src/main/java/com/fullcreative/restapi/models/BooksModel.json");
+	static final String BOOK_ID = "4f8d1c2a-7a55-4b8e-9d57-0d4a5c1b2e11";
+	static final String REQUEST_URI = "/books/" + BOOK_ID;
+
+	private final List<byte[]> bodies = new ArrayList<>();
+	private final List<Book> books = new ArrayList<>();
+	private final List<Entity> entities = new ArrayList<>();
+	private final List<LinkedHashMap<String, Object>> maps = new ArrayList<>();
+	private LocalServiceTestHelper helper;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void load() throws IOException {
+		// Entities need an App Engine environment for their keys
+		helper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+		helper.setUp();
+		String samplesJson = new String(Files.readAllBytes(Paths.get(SAMPLES)), StandardCharsets.UTF_8);
+		for (JsonElement sample : JsonParser.parseString(samplesJson).getAsJsonArray()) {
+			bodies.add(sample.toString().getBytes(StandardCharsets.UTF_8));
+			Book book = BooksGson.GSON.fromJson(sample, Book.class);
+			books.add(book);
+			Entity entity = new Entity("Books", BOOK_ID + entities.size());
+			entity.setProperty("Author", book.getAuthor());
+			entity.setProperty("Title", book.getTitle());
+			entity.setProperty("Language", book.getLanguage());
+			entity.setProperty("Pages", book.getPages());
+			entity.setProperty("ReleaseYear", book.getReleaseYear());
+			entity.setProperty("Version", 1L);
+			entities.add(entity);
+			maps.add(BooksControllerUtilities.mapFromBook(BooksControllerUtilities.bookFromEntity(entity),
+					new LinkedHashMap<>()));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		helper.tearDown();
+	}
+
+	/**
+	 * Moves on to the next sample, the getters return its representations.
+	 */
+	void advance() {
+		next = next + 1 == books.size() ? 0 : next + 1;
+	}
+
+	byte[] body() {
+		return bodies.get(next);
+	}
+
+	Book book() {
+		return books.get(next);
+	}
+
+	Entity entity() {
+		return entities.get(next);
+	}
+
+	LinkedHashMap<String, Object> map() {
+		return maps.get(next);
+	}
+}
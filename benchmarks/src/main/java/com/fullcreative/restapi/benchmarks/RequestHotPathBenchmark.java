@@ -0,0 +1,127 @@
+package com.fullcreative.restapi.benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fullcreative.restapi.models.Book;
+import com.fullcreative.restapi.utilities.BookValidator;
+import com.fullcreative.restapi.utilities.BooksControllerUtilities;
+import com.fullcreative.restapi.utilities.BooksRoute;
+import com.fullcreative.restapi.utilities.RequestBodyTooLargeException;
+
+/**
+ * <p>
+ * The per-request CPU path of {@link BooksControllerUtilities}, measured with
+ * the {@link BooksSamples}: routing, request body parsing, both validators,
+ * Entity to Book to response map to JSON conversion and compact vs. pretty
+ * responses.
+ * </p>
+ * <p>
+ * Run from the project directory after <code>mvn -f benchmarks/pom.xml
+ * package</code>, with the GC profiler for the allocation per operation:
+ * </p>
+ * 
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar -prof gc
+ * </pre>
+ *
+ * @author Sriram
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RequestHotPathBenchmark {
+
+	private final BenchmarkServlets.DiscardingResponse response = new BenchmarkServlets.DiscardingResponse();
+
+	/** The URI split for every check, as doPut and doDelete did before BooksRoute. */
+	@Benchmark
+	public String routeLegacySplit() {
+		List<String> requestsArray = Arrays.asList(BooksSamples.REQUEST_URI.split("/"));
+		boolean hasBookID = requestsArray.size() == 3;
+		requestsArray = Arrays.asList(BooksSamples.REQUEST_URI.split("/"));
+		boolean isValidEndPoint = requestsArray.size() == 3 || requestsArray.size() == 2;
+		String[] segments = BooksSamples.REQUEST_URI.split("/");
+		return hasBookID && isValidEndPoint ? segments[segments.length - 1] : null;
+	}
+
+	@Benchmark
+	public String routeBooksRoute() {
+		BooksRoute route = BooksRoute.fromRequestURI(BooksSamples.REQUEST_URI);
+		return route.hasBookID() && route.hasSubResource() == false ? route.getBookID() : null;
+	}
+
+	@Benchmark
+	public Book parseBookFromRequest(BooksSamples samples) throws RequestBodyTooLargeException, IOException {
+		samples.advance();
+		return BooksControllerUtilities.bookFromRequest(BenchmarkServlets.request(samples.body()));
+	}
+
+	// requestBookValidator and requestBookValidatorForUpdation delegate to these
+	@Benchmark
+	public Map<String, Object> validateCreate(BooksSamples samples) {
+		samples.advance();
+		return BookValidator.CREATE.validate(samples.book()).addTo(new LinkedHashMap<>());
+	}
+
+	@Benchmark
+	public Map<String, Object> validateUpdate(BooksSamples samples) {
+		samples.advance();
+		return BookValidator.UPDATE.validate(samples.book()).addTo(new LinkedHashMap<>());
+	}
+
+	@Benchmark
+	public Book bookFromEntity(BooksSamples samples) {
+		samples.advance();
+		return BooksControllerUtilities.bookFromEntity(samples.entity());
+	}
+
+	@Benchmark
+	public Map<String, Object> mapFromBook(BooksSamples samples) {
+		samples.advance();
+		return BooksControllerUtilities.mapFromBook(samples.book(), new LinkedHashMap<>());
+	}
+
+	@Benchmark
+	public String mapToJsonString(BooksSamples samples) {
+		samples.advance();
+		return BooksControllerUtilities.mapToJsonString(samples.map());
+	}
+
+	@Benchmark
+	public void sendJsonResponse(BooksSamples samples) throws IOException {
+		samples.advance();
+		BooksControllerUtilities.sendJsonResponse(response, responseMap(samples.book()));
+	}
+
+	@Benchmark
+	public void sendPrettyJsonResponse(BooksSamples samples) throws IOException {
+		samples.advance();
+		BooksControllerUtilities.sendPrettyJsonResponse(response, responseMap(samples.book()));
+	}
+
+	/** A new map for every response, sending one removes its STATUS_CODE. */
+	private static Map<String, Object> responseMap(Book book) {
+		Map<String, Object> responseMap = BooksControllerUtilities.mapFromBook(book, new LinkedHashMap<>());
+		responseMap.put("STATUS_CODE", 200);
+		return responseMap;
+	}
+}
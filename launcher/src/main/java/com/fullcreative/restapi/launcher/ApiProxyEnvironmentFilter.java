@@ -0,0 +1,58 @@
+package com.fullcreative.restapi.launcher;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import com.google.apphosting.api.ApiProxy;
+
+/**
+ * <p>
+ * Runs every request in the ApiProxy environment of the
+ * {@link DatastoreBackend}, as App Engine does for the threads it hands to the
+ * servlets. Goes before every other filter.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class ApiProxyEnvironmentFilter implements Filter {
+
+	private final ApiProxy.Environment environment;
+
+	/**
+	 * @param environment - see {@link DatastoreBackend#getEnvironment()}
+	 */
+	public ApiProxyEnvironmentFilter(ApiProxy.Environment environment) {
+		this.environment = environment;
+	}
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+			throws IOException, ServletException {
+		if (environment == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+		ApiProxy.setEnvironmentForCurrentThread(environment);
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			// Virtual threads are not reused, platform threads go back to the pool
+			ApiProxy.clearEnvironmentForCurrentThread();
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+}
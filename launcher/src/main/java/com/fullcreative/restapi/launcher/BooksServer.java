@@ -0,0 +1,230 @@
+package com.fullcreative.restapi.launcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServlet;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.eclipse.jetty.ee8.servlet.DefaultServlet;
+import org.eclipse.jetty.ee8.servlet.FilterHolder;
+import org.eclipse.jetty.ee8.servlet.ServletContextHandler;
+import org.eclipse.jetty.ee8.servlet.ServletHolder;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.fullcreative.restapi.controllers.BooksController;
+import com.fullcreative.restapi.controllers.MetricsController;
+import com.fullcreative.restapi.filters.CompressionFilter;
+import com.fullcreative.restapi.filters.MetricsFilter;
+import com.fullcreative.restapi.filters.ServerTimingFilter;
+import com.fullcreative.restapi.utilities.BooksLog;
+
+/**
+ * <p>
+ * Runs the Books API outside of App Engine, in an embedded Jetty 12 server
+ * that serves every request on its own virtual thread. Needs Java 21, and is
+ * built with launcher/pom.xml.
+ * </p>
+ * <p>
+ * The servlets and filters are the ones of WEB-INF/web.xml, mapped the same
+ * way and in the same order, and the system properties of
+ * WEB-INF/appengine-web.xml are loaded from <code>books.webappDir</code>
+ * (src/main/webapp by default) unless they are already set. The Datastore is
+ * picked with <code>books.datastore</code>, see {@link DatastoreBackend}.
+ * </p>
+ * <p>
+ * The connector is tuned with these system properties:
+ * </p>
+ * <ul>
+ * <li><code>books.server.host</code>, <code>books.server.port</code> - where
+ * to listen, 0.0.0.0:8080 by default</li>
+ * <li><code>books.server.acceptors</code>, <code>books.server.selectors</code>
+ * - threads accepting connections and selecting the ones that can be read, -1
+ * lets Jetty size them from the number of cores</li>
+ * <li><code>books.server.acceptQueueSize</code> - connections the OS queues
+ * before they are accepted, 1024 by default</li>
+ * <li><code>books.server.idleTimeoutMillis</code> - 30000 by default</li>
+ * <li><code>books.server.maxThreads</code> - platform threads for the
+ * acceptors, selectors and Jetty's own tasks, 64 by default</li>
+ * <li><code>books.server.virtualThreads</code> - false serves requests on the
+ * platform threads instead, with <code>books.server.maxThreads</code> raised
+ * accordingly</li>
+ * <li><code>books.server.stopTimeoutMillis</code> - how long requests in
+ * progress get to finish on shutdown, 10000 by default</li>
+ * </ul>
+ * <p>
+ * Streaming clients of <code>/books/_stream</code> don't hold a thread while
+ * they wait, virtual or not. A virtual thread stays pinned to its carrier while
+ * it holds a monitor, which the Books API only does for short in-memory work.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BooksServer {
+
+	private static final String HOST = System.getProperty("books.server.host", "0.0.0.0");
+	private static final int PORT = Integer.getInteger("books.server.port", 8080);
+	private static final int ACCEPTORS = Integer.getInteger("books.server.acceptors", -1);
+	private static final int SELECTORS = Integer.getInteger("books.server.selectors", -1);
+	private static final int ACCEPT_QUEUE_SIZE = Integer.getInteger("books.server.acceptQueueSize", 1024);
+	private static final long IDLE_TIMEOUT_MILLIS = Long.getLong("books.server.idleTimeoutMillis", 30000);
+	private static final int MAX_THREADS = Integer.getInteger("books.server.maxThreads", 64);
+	private static final boolean VIRTUAL_THREADS = Boolean
+			.parseBoolean(System.getProperty("books.server.virtualThreads", "true"));
+	private static final long STOP_TIMEOUT_MILLIS = Long.getLong("books.server.stopTimeoutMillis", 10000);
+
+	private BooksServer() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		Path webappDir = Paths.get(System.getProperty("books.webappDir", "src/main/webapp"));
+		loadAppEngineSystemProperties(webappDir);
+
+		DatastoreBackend datastore = DatastoreBackend.fromName(System.getProperty("books.datastore", "memory"));
+		datastore.start();
+
+		Server server = createServer(webappDir, datastore);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				server.stop();
+			} catch (Exception e) {
+				// Not a static logger, BooksLog must load after the logging configuration
+				Logger logger = BooksLog.getLogger(BooksServer.class);
+				BooksLog.event(logger, Level.SEVERE, "server.stop_failed", e);
+			} finally {
+				datastore.stop();
+				// The JVM exits once the hooks return, queued records would be lost
+				BooksLog.flush();
+			}
+		}, "books-server-shutdown"));
+		server.start();
+		server.join();
+	}
+
+	/**
+	 * <p>
+	 * Builds the server, its connector and the servlet context of the Books API.
+	 * </p>
+	 *
+	 * @param webappDir - served as static files, like index.html
+	 * @param datastore
+	 * @return Server - not started
+	 */
+	public static Server createServer(Path webappDir, DatastoreBackend datastore) {
+		QueuedThreadPool threadPool = new QueuedThreadPool(MAX_THREADS);
+		threadPool.setName("books-server");
+		if (VIRTUAL_THREADS) {
+			threadPool.setVirtualThreadsExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		}
+		Server server = new Server(threadPool);
+		server.setStopTimeout(STOP_TIMEOUT_MILLIS);
+
+		HttpConfiguration httpConfiguration = new HttpConfiguration();
+		httpConfiguration.setSendServerVersion(false);
+		ServerConnector connector = new ServerConnector(server, ACCEPTORS, SELECTORS,
+				new HttpConnectionFactory(httpConfiguration));
+		connector.setHost(HOST);
+		connector.setPort(PORT);
+		connector.setAcceptQueueSize(ACCEPT_QUEUE_SIZE);
+		connector.setIdleTimeout(IDLE_TIMEOUT_MILLIS);
+		server.addConnector(connector);
+
+		ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+		context.setContextPath("/");
+		context.setBaseResourceAsPath(webappDir);
+		context.setWelcomeFiles(new String[] { "index.html" });
+
+		// Same order as WEB-INF/web.xml, behind the ApiProxy environment
+		addFilter(context, new ApiProxyEnvironmentFilter(datastore.getEnvironment()), "/*");
+		addFilter(context, new MetricsFilter(), "/books", "/books/*");
+		addFilter(context, new ServerTimingFilter(), "/books", "/books/*");
+		addFilter(context, new CompressionFilter(), "/books", "/books/*");
+
+		addServlet(context, new BooksController(), "/books", "/books/*");
+		addServlet(context, new MetricsController(), "/metrics");
+		addServlet(context, helloAppEngine(), "/hello");
+		addServlet(context, new DefaultServlet(), "/");
+
+		server.setHandler(context.get());
+		return server;
+	}
+
+	private static void addFilter(ServletContextHandler context, Filter filter, String... pathSpecs) {
+		FilterHolder holder = new FilterHolder(filter);
+		holder.setAsyncSupported(true);
+		for (String pathSpec : pathSpecs) {
+			context.addFilter(holder, pathSpec, EnumSet.of(DispatcherType.REQUEST));
+		}
+	}
+
+	private static void addServlet(ServletContextHandler context, HttpServlet servlet, String... pathSpecs) {
+		ServletHolder holder = new ServletHolder(servlet);
+		holder.setAsyncSupported(true);
+		for (String pathSpec : pathSpecs) {
+			context.addServlet(holder, pathSpec);
+		}
+	}
+
+	/** HelloAppEngine is in the default package, which can't be imported. */
+	private static HttpServlet helloAppEngine() {
+		try {
+			return (HttpServlet) Class.forName("HelloAppEngine").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("HelloAppEngine is not on the classpath", e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sets the system properties of appengine-web.xml that aren't set already,
+	 * and applies its logging configuration.
+	 * </p>
+	 *
+	 * @param webappDir
+	 * @throws Exception
+	 */
+	private static void loadAppEngineSystemProperties(Path webappDir) throws Exception {
+		Path appEngineWebXml = webappDir.resolve("WEB-INF/appengine-web.xml");
+		if (Files.exists(appEngineWebXml) == false) {
+			return;
+		}
+		NodeList properties = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(appEngineWebXml.toFile()).getElementsByTagName("property");
+		for (int i = 0; i < properties.getLength(); i++) {
+			Element property = (Element) properties.item(i);
+			String name = property.getAttribute("name");
+			String value = property.getAttribute("value");
+			if (name.equals("java.util.logging.config.file")) {
+				readLoggingConfiguration(webappDir.resolve(value));
+			} else if (System.getProperty(name) == null) {
+				System.setProperty(name, value);
+			}
+		}
+	}
+
+	private static void readLoggingConfiguration(Path loggingProperties) throws IOException {
+		if (System.getProperty("java.util.logging.config.file") != null || Files.exists(loggingProperties) == false) {
+			return;
+		}
+		try (InputStream configuration = Files.newInputStream(loggingProperties)) {
+			LogManager.getLogManager().readConfiguration(configuration);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.fullcreative.restapi.launcher;
+
+import com.google.apphosting.api.ApiProxy;
+
+/**
+ * <p>
+ * The Datastore the Books API talks to when it runs outside of App Engine,
+ * picked with the <code>books.datastore</code> system property:
+ * </p>
+ * <ul>
+ * <li><code>memory</code> (the default) - {@link InMemoryDatastoreBackend}, a
+ * local stand-in for development and load tests</li>
+ * <li><code>emulator</code> - {@link EmulatorDatastoreBackend}, the Cloud
+ * Datastore emulator or a real Cloud Datastore project</li>
+ * </ul>
+ * <p>
+ * The API classes reach the Datastore through the App Engine ApiProxy, which
+ * needs an environment on every thread that makes a call. The backend hands
+ * out that environment and {@link ApiProxyEnvironmentFilter} installs it on
+ * each request thread.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public interface DatastoreBackend {
+
+	/**
+	 * <p>
+	 * Connects to the Datastore. Called once, before the server starts.
+	 * </p>
+	 */
+	void start();
+
+	/**
+	 * @return ApiProxy.Environment - the environment request threads run in, null
+	 *         if the backend installs its own
+	 */
+	ApiProxy.Environment getEnvironment();
+
+	/**
+	 * <p>
+	 * Releases the Datastore. Called once, after the server stopped.
+	 * </p>
+	 */
+	void stop();
+
+	/**
+	 * @param name - memory or emulator
+	 * @return DatastoreBackend
+	 * @throws IllegalArgumentException - for any other name
+	 */
+	static DatastoreBackend fromName(String name) {
+		switch (name) {
+		case "memory":
+			return new InMemoryDatastoreBackend(System.getProperty("books.datastore.backingStore"));
+		case "emulator":
+			return new EmulatorDatastoreBackend();
+		default:
+			throw new IllegalArgumentException("books.datastore should be memory or emulator, not " + name);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.fullcreative.restapi.launcher;
+
+import com.google.apphosting.api.ApiProxy;
+
+/**
+ * <p>
+ * Sends the Datastore calls over the Cloud Datastore API, to the emulator
+ * started with <code>gcloud beta emulators datastore start</code> or to a Cloud
+ * Datastore project.
+ * </p>
+ * <p>
+ * The App Engine SDK only reads this setup from environment variables, so they
+ * must be set before the server is started:
+ * </p>
+ * <ul>
+ * <li><code>DATASTORE_USE_CLOUD_DATASTORE=true</code></li>
+ * <li><code>DATASTORE_PROJECT_ID</code> or <code>DATASTORE_APP_ID</code> - the
+ * project</li>
+ * <li><code>DATASTORE_EMULATOR_HOST</code> - e.g. <code>localhost:8081</code>,
+ * left out for a real project</li>
+ * </ul>
+ * <p>
+ * The SDK installs its own ApiProxy environment on the threads that call the
+ * Datastore in this mode.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class EmulatorDatastoreBackend implements DatastoreBackend {
+
+	@Override
+	public void start() {
+		if ("true".equals(System.getenv("DATASTORE_USE_CLOUD_DATASTORE")) == false) {
+			throw new IllegalStateException("Set DATASTORE_USE_CLOUD_DATASTORE=true to use the emulator");
+		}
+		if (System.getenv("DATASTORE_PROJECT_ID") == null && System.getenv("DATASTORE_APP_ID") == null) {
+			throw new IllegalStateException("Set DATASTORE_PROJECT_ID or DATASTORE_APP_ID to use the emulator");
+		}
+	}
+
+	@Override
+	public ApiProxy.Environment getEnvironment() {
+		return null;
+	}
+
+	@Override
+	public void stop() {
+	}
+}
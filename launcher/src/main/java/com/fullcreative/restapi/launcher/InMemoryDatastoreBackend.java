@@ -0,0 +1,56 @@
+package com.fullcreative.restapi.launcher;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+
+/**
+ * <p>
+ * Runs the local Datastore of the App Engine SDK inside the server process.
+ * Books are kept in memory and lost when the server stops, unless
+ * <code>books.datastore.backingStore</code> names a file they are saved to and
+ * loaded from.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class InMemoryDatastoreBackend implements DatastoreBackend {
+
+	private final LocalServiceTestHelper helper;
+	private ApiProxy.Environment environment;
+
+	/**
+	 * @param backingStore - file the Books are saved to, null to keep them in
+	 *                     memory only
+	 */
+	public InMemoryDatastoreBackend(String backingStore) {
+		LocalDatastoreServiceTestConfig config = new LocalDatastoreServiceTestConfig();
+		if (backingStore != null) {
+			config.setNoStorage(false).setBackingStoreLocation(backingStore);
+		}
+		this.helper = new LocalServiceTestHelper(config);
+	}
+
+	@Override
+	public void start() {
+		helper.setUp();
+		// Shared by every request thread, the local services are thread safe
+		environment = ApiProxy.getCurrentEnvironment();
+	}
+
+	@Override
+	public ApiProxy.Environment getEnvironment() {
+		return environment;
+	}
+
+	@Override
+	public void stop() {
+		ApiProxy.setEnvironmentForCurrentThread(environment);
+		try {
+			helper.tearDown();
+		} finally {
+			ApiProxy.clearEnvironmentForCurrentThread();
+		}
+	}
+}
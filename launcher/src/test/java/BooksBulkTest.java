@@ -0,0 +1,83 @@
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Checks that a bulk request reports a result for every operation and that
+ * one bad operation doesn't fail the others.
+ */
+public class BooksBulkTest {
+
+  private static BooksTestServer server;
+  private static BooksTestClient client;
+
+  @BeforeClass
+  public static void startServer() throws Exception {
+    server = BooksTestServer.start();
+    client = new BooksTestClient(server);
+  }
+
+  @AfterClass
+  public static void stopServer() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void everyOperationGetsItsOwnResult() throws Exception {
+    String updated = client.create(BooksTestClient.BOOK);
+    String stale = client.create(BooksTestClient.BOOK);
+    String deleted = client.create(BooksTestClient.BOOK);
+    String body = "[{\"op\":\"create\",\"book\":" + BooksTestClient.BOOK + "},"
+        + "{\"op\":\"create\",\"book\":{\"author\":\"Chinua Achebe\"}},"
+        + "{\"op\":\"update\",\"id\":\"" + updated + "\",\"ifMatch\":\"\\\"1\\\"\",\"book\":{\"pages\":300}},"
+        + "{\"op\":\"update\",\"id\":\"" + stale + "\",\"ifMatch\":\"\\\"9\\\"\",\"book\":{\"pages\":300}},"
+        + "{\"op\":\"delete\",\"id\":\"" + deleted + "\"},"
+        + "{\"op\":\"delete\",\"id\":\"missing\"},"
+        + "{\"op\":\"delete\",\"id\":\"" + updated + "\"},"
+        + "{\"op\":\"rename\"},"
+        + "42]";
+    BooksTestClient.Response response = client.send("POST", "/books/_bulk", body);
+    Assert.assertEquals(200, response.status);
+    JsonArray results = response.json().getAsJsonArray("results");
+    Assert.assertEquals(9, results.size());
+    int[] statusCodes = { 200, 400, 200, 412, 200, 404, 400, 400, 400 };
+    for (int i = 0; i < statusCodes.length; i++) {
+      JsonObject result = results.get(i).getAsJsonObject();
+      Assert.assertEquals(i, result.get("index").getAsInt());
+      Assert.assertEquals(result.toString(), statusCodes[i], result.get("STATUS_CODE").getAsInt());
+    }
+    String created = results.get(0).getAsJsonObject().get("id").getAsString();
+    Assert.assertEquals(200, client.send("GET", "/books/" + created, null).status);
+    Assert.assertTrue(results.get(1).getAsJsonObject().has("PAGES_ERROR"));
+    Assert.assertEquals("\"2\"", results.get(2).getAsJsonObject().get("ETAG").getAsString());
+    Assert.assertEquals(300, results.get(2).getAsJsonObject().get("pages").getAsInt());
+    Assert.assertEquals("\"1\"", results.get(3).getAsJsonObject().get("ETAG").getAsString());
+    Assert.assertTrue(results.get(6).getAsJsonObject().has("DUPLICATE_ID_ERROR"));
+    Assert.assertTrue(results.get(7).getAsJsonObject().has("OPERATION_ERROR"));
+
+    Assert.assertEquals(209, client.send("GET", "/books/" + stale, null).json().get("pages").getAsInt());
+    Assert.assertEquals(404, client.send("GET", "/books/" + deleted, null).status);
+  }
+
+  @Test
+  public void bodiesThatAreNotArraysAreRejected() throws Exception {
+    BooksTestClient.Response response = client.send("POST", "/books/_bulk", BooksTestClient.BOOK);
+    Assert.assertEquals(400, response.status);
+    Assert.assertTrue(response.json().has("BULK_FORMAT_ERROR"));
+  }
+
+  @Test
+  public void bulkUpdatesReplaceTheCachedBook() throws Exception {
+    String id = client.create(BooksTestClient.BOOK);
+    Assert.assertEquals(200, client.send("GET", "/books/" + id, null).status);
+    client.send("POST", "/books/_bulk", "[{\"op\":\"update\",\"id\":\"" + id + "\",\"book\":{\"title\":\"Bulk\"}}]");
+    Assert.assertEquals("Bulk", client.send("GET", "/books/" + id, null).json().get("title").getAsString());
+
+    client.send("POST", "/books/_bulk", "[{\"op\":\"delete\",\"id\":\"" + id + "\"}]");
+    Assert.assertEquals(404, client.send("GET", "/books/" + id, null).status);
+  }
+}
@@ -0,0 +1,67 @@
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fullcreative.restapi.utilities.BooksCache;
+
+/**
+ * Checks that single-book lookups are served from the {@link BooksCache} and
+ * that writes never leave a stale book in it.
+ */
+public class BooksCacheTest {
+
+  private static BooksTestServer server;
+  private static BooksTestClient client;
+
+  @BeforeClass
+  public static void startServer() throws Exception {
+    server = BooksTestServer.start();
+    client = new BooksTestClient(server);
+  }
+
+  @AfterClass
+  public static void stopServer() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void repeatedLookupsAreCacheHits() throws Exception {
+    String id = client.create(BooksTestClient.BOOK);
+    client.send("GET", "/books/" + id, null);
+    long hits = BooksCache.getHitCount();
+    Assert.assertEquals(200, client.send("GET", "/books/" + id, null).status);
+    Assert.assertEquals(200, client.send("GET", "/books/" + id, null).status);
+    Assert.assertEquals(hits + 2, BooksCache.getHitCount());
+  }
+
+  @Test
+  public void updateReplacesTheCachedBook() throws Exception {
+    String id = client.create(BooksTestClient.BOOK);
+    Assert.assertEquals("Things Fall Apart", title(id));
+    client.send("PUT", "/books/" + id, "{\"title\":\"No Longer at Ease\"}");
+    Assert.assertEquals("No Longer at Ease", title(id));
+  }
+
+  @Test
+  public void deleteRemovesTheCachedBook() throws Exception {
+    String id = client.create(BooksTestClient.BOOK);
+    Assert.assertEquals(200, client.send("GET", "/books/" + id, null).status);
+    Assert.assertEquals(200, client.send("DELETE", "/books/" + id, null).status);
+    Assert.assertEquals(404, client.send("GET", "/books/" + id, null).status);
+  }
+
+  @Test
+  public void unknownIDsAreRemembered() throws Exception {
+    long misses = BooksCache.getMissCount();
+    long hits = BooksCache.getHitCount();
+    Assert.assertEquals(404, client.send("GET", "/books/unknown", null).status);
+    Assert.assertEquals(404, client.send("GET", "/books/unknown", null).status);
+    Assert.assertEquals(misses + 1, BooksCache.getMissCount());
+    Assert.assertEquals(hits + 1, BooksCache.getHitCount());
+  }
+
+  private String title(String id) throws Exception {
+    return client.send("GET", "/books/" + id, null).json().get("title").getAsString();
+  }
+}
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Checks that the change feed pages through upserts and deletes with cursors.
+ * The surefire configuration sets <code>books.changes.settleMillis</code> to 0,
+ * so changes are served as soon as their millisecond has passed.
+ */
+public class BooksChangeFeedTest {
+
+  private static BooksTestServer server;
+  private static BooksTestClient client;
+
+  @BeforeClass
+  public static void startServer() throws Exception {
+    server = BooksTestServer.start();
+    client = new BooksTestClient(server);
+  }
+
+  @AfterClass
+  public static void stopServer() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void pagesWithCursorsAndReportsDeletes() throws Exception {
+    String first = client.create(BooksTestClient.BOOK);
+    String second = client.create(BooksTestClient.BOOK);
+    String deleted = client.create(BooksTestClient.BOOK);
+    Assert.assertEquals(200, client.send("DELETE", "/books/" + deleted, null).status);
+    Thread.sleep(5);
+
+    Set<String> upserts = new HashSet<>();
+    Set<String> deletes = new HashSet<>();
+    String path = "/books/_changes?since=0&limit=2";
+    boolean hasMore = true;
+    int pages = 0;
+    while (hasMore) {
+      BooksTestClient.Response response = client.send("GET", path, null);
+      Assert.assertEquals(response.body, 200, response.status);
+      JsonObject feed = response.json();
+      JsonArray changes = feed.getAsJsonArray("changes");
+      Assert.assertTrue(changes.size() <= 2);
+      for (JsonElement element : changes) {
+        JsonObject change = element.getAsJsonObject();
+        String id = change.get("id").getAsString();
+        if (change.get("change").getAsString().equals("delete")) {
+          Assert.assertFalse(change.has("book"));
+          deletes.add(id);
+        } else {
+          Assert.assertEquals(id, change.getAsJsonObject("book").get("id").getAsString());
+          upserts.add(id);
+        }
+      }
+      hasMore = feed.get("hasMore").getAsBoolean();
+      path = "/books/_changes?limit=2&cursor=" + feed.get("nextCursor").getAsString();
+      pages++;
+    }
+    Assert.assertEquals(2, pages);
+    Assert.assertEquals(new HashSet<>(Arrays.asList(first, second)), upserts);
+    Assert.assertEquals(Collections.singleton(deleted), deletes);
+
+    // Nothing new after the last cursor, until the next write
+    JsonObject caughtUp = client.send("GET", path, null).json();
+    Assert.assertEquals(0, caughtUp.getAsJsonArray("changes").size());
+    client.send("PUT", "/books/" + first, "{\"pages\":210}");
+    Thread.sleep(5);
+    JsonArray next = client.send("GET", "/books/_changes?cursor=" + caughtUp.get("nextCursor").getAsString(), null)
+        .json().getAsJsonArray("changes");
+    Assert.assertEquals(1, next.size());
+    Assert.assertEquals(first, next.get(0).getAsJsonObject().get("id").getAsString());
+  }
+
+  @Test
+  public void badParametersAreRejected() throws Exception {
+    for (String query : new String[] { "cursor=not-a-cursor", "since=yesterday", "limit=0", "since=0&limit=x" }) {
+      Assert.assertEquals(query, 400, client.send("GET", "/books/_changes?" + query, null).status);
+    }
+  }
+}
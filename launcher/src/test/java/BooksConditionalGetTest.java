@@ -0,0 +1,74 @@
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that GETs of a book or a page of books are answered with 304 Not
+ * Modified when the client already has the current representation.
+ */
+public class BooksConditionalGetTest {
+
+  private static BooksTestServer server;
+  private static BooksTestClient client;
+
+  @BeforeClass
+  public static void startServer() throws Exception {
+    server = BooksTestServer.start();
+    client = new BooksTestClient(server);
+  }
+
+  @AfterClass
+  public static void stopServer() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void bookNotModifiedForCurrentETag() throws Exception {
+    String id = client.create(BooksTestClient.BOOK);
+    BooksTestClient.Response notModified = client.send("GET", "/books/" + id, null, "If-None-Match", "\"1\"");
+    Assert.assertEquals(304, notModified.status);
+    Assert.assertEquals("", notModified.body);
+    Assert.assertEquals("\"1\"", notModified.eTag);
+    // Weak comparison, as If-None-Match requires
+    Assert.assertEquals(304, client.send("GET", "/books/" + id, null, "If-None-Match", "\"0\", W/\"1\"").status);
+    Assert.assertEquals(304, client.send("GET", "/books/" + id, null, "If-None-Match", "*").status);
+    Assert.assertEquals(200, client.send("GET", "/books/" + id, null, "If-None-Match", "\"2\"").status);
+  }
+
+  @Test
+  public void bookModifiedOnceUpdated() throws Exception {
+    String id = client.create(BooksTestClient.BOOK);
+    client.send("PUT", "/books/" + id, "{\"pages\":210}");
+    BooksTestClient.Response modified = client.send("GET", "/books/" + id, null, "If-None-Match", "\"1\"");
+    Assert.assertEquals(200, modified.status);
+    Assert.assertEquals("\"2\"", modified.eTag);
+    Assert.assertEquals(304, client.send("GET", "/books/" + id, null, "If-None-Match", "\"2\"").status);
+  }
+
+  @Test
+  public void bookNotModifiedSinceLastModified() throws Exception {
+    String id = client.create(BooksTestClient.BOOK);
+    String lastModified = client.send("GET", "/books/" + id, null).lastModified;
+    Assert.assertNotNull(lastModified);
+    Assert.assertEquals(304, client.send("GET", "/books/" + id, null, "If-Modified-Since", lastModified).status);
+    // If-None-Match wins over If-Modified-Since
+    Assert.assertEquals(200, client.send("GET", "/books/" + id, null, "If-None-Match", "\"0\"",
+        "If-Modified-Since", lastModified).status);
+  }
+
+  @Test
+  public void pageNotModifiedUntilOneOfItsBooksChanges() throws Exception {
+    client.create(BooksTestClient.BOOK);
+    String id = client.create(BooksTestClient.BOOK);
+    BooksTestClient.Response page = client.send("GET", "/books?limit=100", null);
+    Assert.assertEquals(200, page.status);
+    Assert.assertNotNull(page.eTag);
+    Assert.assertEquals(304, client.send("GET", "/books?limit=100", null, "If-None-Match", page.eTag).status);
+
+    client.send("PUT", "/books/" + id, "{\"pages\":210}");
+    BooksTestClient.Response changed = client.send("GET", "/books?limit=100", null, "If-None-Match", page.eTag);
+    Assert.assertEquals(200, changed.status);
+    Assert.assertNotEquals(page.eTag, changed.eTag);
+  }
+}
@@ -0,0 +1,315 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fullcreative.restapi.controllers.BooksController;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * End-to-end load test of {@link BooksController}.
+ *
+ * By default the Books API is started in the Jetty server of the launcher,
+ * see {@link BooksTestServer}, backed by the in-memory local Datastore. It can
+ * also be pointed at a running server, e.g. the local development server, with
+ * {@code baseUrl=http://localhost:8080}; the Datastore RPC counts are then not
+ * available.
+ *
+ * The Datastore is seeded with copies of the books in BooksModel.json, then
+ * requests are sent at a fixed rate in the configured mix. Latency is measured
+ * from the time a request was scheduled to be sent, so a server that falls
+ * behind shows it in the tail latencies instead of lowering the request rate.
+ * Requests sent during the warm up are not reported.
+ *
+ * Options are given as name=value arguments, all optional. Run from the
+ * project directory once {@code mvn -f launcher/pom.xml package} has built the
+ * launcher:
+ * {@code java -cp "launcher/target/test-classes:launcher/target/classes:launcher/target/lib/*" BooksLoadTest
+ * rps=200 duration=30 mix=getOne:60,getAll:5,post:15,put:15,delete:5}
+ */
+public class BooksLoadTest {
+
+  private static final String SAMPLES = "src/main/java/com/fullcreative/restapi/models/BooksModel.json";
+  private static final List<String> REQUEST_TYPES = Arrays.asList("getOne", "getAll", "post", "put", "delete");
+
+  private final String baseUrl;
+  private final List<String> mix = new ArrayList<>();
+  private final List<String> bookIDs = new ArrayList<>();
+  private final Map<String, Recorder> recorders = new LinkedHashMap<>();
+  private final AtomicInteger connectionErrors = new AtomicInteger();
+
+  private BooksLoadTest(String baseUrl, String mixOption) {
+    this.baseUrl = baseUrl;
+    for (String entry : mixOption.split(",")) {
+      String[] typeAndWeight = entry.split(":");
+      if (REQUEST_TYPES.contains(typeAndWeight[0]) == false) {
+        throw new IllegalArgumentException("Unknown request type " + typeAndWeight[0] + ", use one of "
+            + REQUEST_TYPES);
+      }
+      for (int i = 0; i < Integer.parseInt(typeAndWeight[1]); i++) {
+        mix.add(typeAndWeight[0]);
+      }
+      recorders.put(typeAndWeight[0], new Recorder());
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      String[] nameAndValue = arg.split("=", 2);
+      options.put(nameAndValue[0], nameAndValue[1]);
+    }
+    int rps = Integer.parseInt(options.getOrDefault("rps", "100"));
+    int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+    int clients = Integer.parseInt(options.getOrDefault("clients", "64"));
+    int seedCopies = Integer.parseInt(options.getOrDefault("seedCopies", "20"));
+    String mix = options.getOrDefault("mix", "getOne:60,getAll:5,post:15,put:15,delete:5");
+    String samples = options.getOrDefault("samples", SAMPLES);
+
+    BooksTestServer server = null;
+    String baseUrl = options.get("baseUrl");
+    if (baseUrl == null) {
+      server = BooksTestServer.start();
+      baseUrl = server.getBaseUrl();
+    }
+    try {
+      BooksLoadTest loadTest = new BooksLoadTest(baseUrl, mix);
+      loadTest.seed(samples, seedCopies);
+      System.out.printf("Seeded %d books, sending %d requests/s for %ds after a %ds warm up to %s%n",
+          loadTest.bookIDs.size(), rps, duration, warmup, baseUrl);
+      loadTest.run(rps, warmup, clients, false);
+      if (server != null) {
+        server.resetDatastoreCalls();
+      }
+      long elapsedNanos = loadTest.run(rps, duration, clients, true);
+      loadTest.report(elapsedNanos, server == null ? null : server.getDatastoreCallsPerRequest());
+    } finally {
+      if (server != null) {
+        server.stop();
+      }
+    }
+  }
+
+  private void seed(String samplesPath, int copies) throws IOException {
+    String samplesJson = new String(Files.readAllBytes(Paths.get(samplesPath)), StandardCharsets.UTF_8);
+    JsonArray samples = JsonParser.parseString(samplesJson).getAsJsonArray();
+    for (int copy = 0; copy < copies; copy++) {
+      for (JsonElement sample : samples) {
+        Response response = send("POST", "/books", sample.toString(), null);
+        if (response.status == 400) {
+          // Some samples don't pass validation, e.g. books in more than one language
+          continue;
+        }
+        if (response.status != 200) {
+          throw new IllegalStateException("Seeding failed with " + response.status + ": " + response.body);
+        }
+        bookIDs.add(JsonParser.parseString(response.body).getAsJsonObject().get("id").getAsString());
+      }
+    }
+    if (bookIDs.isEmpty()) {
+      throw new IllegalStateException("None of the samples in " + samplesPath + " could be created");
+    }
+  }
+
+  /**
+   * Sends requests at the given rate for the given number of seconds.
+   *
+   * @return the nanoseconds from the first scheduled request to the last
+   *         response
+   */
+  private long run(int rps, int seconds, int clients, boolean record) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(clients);
+    long requests = (long) rps * seconds;
+    long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+    long start = System.nanoTime();
+    for (long i = 0; i < requests; i++) {
+      long scheduledAt = start + i * intervalNanos;
+      long wait = scheduledAt - System.nanoTime();
+      if (wait > 0) {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      }
+      String type = mix.get(ThreadLocalRandom.current().nextInt(mix.size()));
+      executor.execute(() -> {
+        try {
+          Response response = send(type);
+          if (record) {
+            recorders.get(type).record(System.nanoTime() - scheduledAt, response.status);
+          }
+        } catch (IOException e) {
+          connectionErrors.incrementAndGet();
+        }
+      });
+    }
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.HOURS);
+    return System.nanoTime() - start;
+  }
+
+  private Response send(String type) throws IOException {
+    switch (type) {
+    case "getOne":
+      return send("GET", "/books/" + randomBookID(false), null, type);
+    case "getAll":
+      return send("GET", "/books", null, type);
+    case "post":
+      Response created = send("POST", "/books", newBook().toString(), type);
+      if (created.status == 200) {
+        String bookID = JsonParser.parseString(created.body).getAsJsonObject().get("id").getAsString();
+        synchronized (bookIDs) {
+          bookIDs.add(bookID);
+        }
+      }
+      return created;
+    case "put":
+      JsonObject update = new JsonObject();
+      update.addProperty("pages", 20 + ThreadLocalRandom.current().nextInt(1000));
+      return send("PUT", "/books/" + randomBookID(false), update.toString(), type);
+    case "delete":
+      return send("DELETE", "/books/" + randomBookID(true), null, type);
+    default:
+      throw new IllegalArgumentException(type);
+    }
+  }
+
+  private String randomBookID(boolean remove) {
+    synchronized (bookIDs) {
+      if (bookIDs.isEmpty()) {
+        return "no-books-left";
+      }
+      int index = ThreadLocalRandom.current().nextInt(bookIDs.size());
+      String bookID = bookIDs.get(index);
+      if (remove) {
+        bookIDs.set(index, bookIDs.get(bookIDs.size() - 1));
+        bookIDs.remove(bookIDs.size() - 1);
+      }
+      return bookID;
+    }
+  }
+
+  private static JsonObject newBook() {
+    JsonObject book = new JsonObject();
+    book.addProperty("author", "Load Test");
+    book.addProperty("title", "Load Test " + ThreadLocalRandom.current().nextInt());
+    book.addProperty("language", "English");
+    book.addProperty("pages", 20 + ThreadLocalRandom.current().nextInt(1000));
+    book.addProperty("releaseYear", 1900 + ThreadLocalRandom.current().nextInt(100));
+    return book;
+  }
+
+  private Response send(String method, String path, String body, String type) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    connection.setRequestMethod(method);
+    if (type != null) {
+      connection.setRequestProperty(BooksTestServer.REQUEST_TYPE_HEADER, type);
+    }
+    if (body != null) {
+      connection.setDoOutput(true);
+      connection.setRequestProperty("Content-Type", "application/json");
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    Response response = new Response();
+    response.status = connection.getResponseCode();
+    InputStream in = response.status < 400 ? connection.getInputStream() : connection.getErrorStream();
+    if (in != null) {
+      try (InputStream responseBody = in) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read; (read = responseBody.read(buffer)) != -1;) {
+          bytes.write(buffer, 0, read);
+        }
+        response.body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+      }
+    }
+    return response;
+  }
+
+  private void report(long elapsedNanos, Map<String, Double> datastoreCallsPerRequest) {
+    double seconds = elapsedNanos / 1e9;
+    System.out.printf("%n%-8s %8s %10s %9s %9s %9s %9s %10s  %s%n", "type", "requests", "req/s", "p50 ms",
+        "p95 ms", "p99 ms", "max ms", "RPCs/req", "status codes");
+    Recorder all = new Recorder();
+    recorders.forEach((type, recorder) -> {
+      print(type, recorder, seconds, datastoreCallsPerRequest == null ? null : datastoreCallsPerRequest.get(type));
+      all.addAll(recorder);
+    });
+    print("all", all, seconds, null);
+    if (connectionErrors.get() > 0) {
+      System.out.printf("%d requests failed to connect%n", connectionErrors.get());
+    }
+  }
+
+  private static void print(String type, Recorder recorder, double seconds, Double datastoreCalls) {
+    long[] latencies = recorder.sortedLatencies();
+    System.out.printf("%-8s %8d %10.1f %9.2f %9.2f %9.2f %9.2f %10s  %s%n", type, latencies.length,
+        latencies.length / seconds, percentile(latencies, 50), percentile(latencies, 95),
+        percentile(latencies, 99), percentile(latencies, 100),
+        datastoreCalls == null ? "-" : String.format("%.2f", datastoreCalls), recorder.statusCodes);
+  }
+
+  private static double percentile(long[] sortedLatencies, double percentile) {
+    if (sortedLatencies.length == 0) {
+      return Double.NaN;
+    }
+    int rank = (int) Math.ceil(percentile / 100 * sortedLatencies.length);
+    return sortedLatencies[Math.max(rank, 1) - 1] / 1e6;
+  }
+
+  private static class Response {
+    private int status;
+    private String body;
+  }
+
+  /** Latencies and status codes of one request type. */
+  private static class Recorder {
+    private long[] latencies = new long[1024];
+    private int size;
+    private final Map<Integer, Integer> statusCodes = new TreeMap<>();
+
+    synchronized void record(long latencyNanos, int status) {
+      if (size == latencies.length) {
+        latencies = Arrays.copyOf(latencies, size * 2);
+      }
+      latencies[size++] = latencyNanos;
+      statusCodes.merge(status, 1, Integer::sum);
+    }
+
+    synchronized void addAll(Recorder other) {
+      for (long latency : other.sortedLatencies()) {
+        if (size == latencies.length) {
+          latencies = Arrays.copyOf(latencies, size * 2);
+        }
+        latencies[size++] = latency;
+      }
+      other.statusCodes.forEach((status, count) -> statusCodes.merge(status, count, Integer::sum));
+    }
+
+    synchronized long[] sortedLatencies() {
+      long[] sorted = Arrays.copyOf(latencies, size);
+      Arrays.sort(sorted);
+      return sorted;
+    }
+  }
+}
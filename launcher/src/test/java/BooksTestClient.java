@@ -0,0 +1,86 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Sends requests to a {@link BooksTestServer} and reads the whole response.
+ */
+class BooksTestClient {
+
+  static final String BOOK = "{\"author\":\"Chinua Achebe\",\"title\":\"Things Fall Apart\","
+      + "\"language\":\"English\",\"pages\":209,\"releaseYear\":1958}";
+
+  private final String baseUrl;
+
+  BooksTestClient(BooksTestServer server) {
+    this.baseUrl = server.getBaseUrl();
+  }
+
+  /** Creates a book and returns its ID. */
+  String create(String book) throws IOException {
+    Response response = send("POST", "/books", book);
+    if (response.status != 200) {
+      throw new IllegalStateException("Create failed with " + response.status + ": " + response.body);
+    }
+    return response.json().get("id").getAsString();
+  }
+
+  /**
+   * @param body    the request body, null for none
+   * @param headers alternating header names and values
+   */
+  Response send(String method, String path, String body, String... headers) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    connection.setRequestMethod(method);
+    for (int i = 0; i < headers.length; i += 2) {
+      connection.setRequestProperty(headers[i], headers[i + 1]);
+    }
+    if (body != null) {
+      connection.setDoOutput(true);
+      connection.setRequestProperty("Content-Type", "application/json");
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    try {
+      return new Response(connection);
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  static class Response {
+    final int status;
+    final String eTag;
+    final String lastModified;
+    final String body;
+
+    private Response(HttpURLConnection connection) throws IOException {
+      status = connection.getResponseCode();
+      eTag = connection.getHeaderField("ETag");
+      lastModified = connection.getHeaderField("Last-Modified");
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (in != null) {
+        try (InputStream responseBody = in) {
+          byte[] buffer = new byte[8192];
+          for (int read; (read = responseBody.read(buffer)) != -1;) {
+            bytes.write(buffer, 0, read);
+          }
+        }
+      }
+      body = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    JsonObject json() {
+      return JsonParser.parseString(body).getAsJsonObject();
+    }
+  }
+}
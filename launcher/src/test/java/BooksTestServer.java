@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.jetty.ee8.nested.ContextHandler;
+import org.eclipse.jetty.ee8.servlet.FilterHolder;
+import org.eclipse.jetty.ee8.servlet.ServletContextHandler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import com.fullcreative.restapi.launcher.BooksServer;
+import com.fullcreative.restapi.launcher.InMemoryDatastoreBackend;
+import com.google.apphosting.api.ApiProxy;
+
+/**
+ * Runs the Books API in the Jetty server of {@link BooksServer} on a free
+ * local port, backed by the in-memory Datastore of
+ * {@link InMemoryDatastoreBackend}, for the tests and the load test.
+ *
+ * The Datastore RPCs of every request are counted and added up per the value
+ * of its {@value #REQUEST_TYPE_HEADER} header. Each request runs in its own
+ * ApiProxy environment that carries its counter, so the calls are counted
+ * whichever thread makes them, including async calls and threads started for
+ * the request.
+ */
+class BooksTestServer {
+
+  /** Request header naming the kind of request, used to group the RPC counts. */
+  static final String REQUEST_TYPE_HEADER = "X-Load-Test-Type";
+
+  static {
+    System.setProperty("books.server.host", "127.0.0.1");
+    System.setProperty("books.server.port", "0");
+  }
+
+  private final InMemoryDatastoreBackend datastore = new InMemoryDatastoreBackend(null);
+  private final Server server;
+  private final Map<String, LongAdder> datastoreCallsByType = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> requestsByType = new ConcurrentHashMap<>();
+
+  private BooksTestServer() throws Exception {
+    datastore.start();
+    countDatastoreCalls();
+    Path webappDir = Paths.get(System.getProperty("books.webappDir", "src/main/webapp"));
+    server = BooksServer.createServer(webappDir, datastore);
+    // Mapped after the filters of BooksServer, once the request has its environment
+    ServletContextHandler context = (ServletContextHandler) ((ContextHandler.CoreContextHandler) server
+        .getHandler()).getContextHandler();
+    context.addFilter(new FilterHolder(new DatastoreCallsFilter()), "/*", EnumSet.of(DispatcherType.REQUEST));
+  }
+
+  /**
+   * Starts the server. The thread that starts it stays in the environment of
+   * the Datastore, as with a {@code LocalServiceTestHelper}.
+   */
+  static BooksTestServer start() throws Exception {
+    BooksTestServer testServer = new BooksTestServer();
+    testServer.server.start();
+    return testServer;
+  }
+
+  void stop() throws Exception {
+    try {
+      server.stop();
+    } finally {
+      datastore.stop();
+    }
+  }
+
+  String getBaseUrl() {
+    return "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+  }
+
+  /** Average Datastore RPCs per request of each request type served so far. */
+  Map<String, Double> getDatastoreCallsPerRequest() {
+    Map<String, Double> callsPerRequest = new HashMap<>();
+    requestsByType.forEach((type, requests) -> callsPerRequest.put(type,
+        datastoreCallsByType.get(type).doubleValue() / requests.doubleValue()));
+    return callsPerRequest;
+  }
+
+  void resetDatastoreCalls() {
+    datastoreCallsByType.clear();
+    requestsByType.clear();
+  }
+
+  /**
+   * Wraps the ApiProxy delegate of the local services, so the calls made in a
+   * {@link CountingEnvironment} are counted.
+   */
+  @SuppressWarnings("unchecked")
+  private static synchronized void countDatastoreCalls() {
+    ApiProxy.Delegate<ApiProxy.Environment> delegate = ApiProxy.getDelegate();
+    if (delegate instanceof CountingDelegate == false) {
+      ApiProxy.setDelegate(new CountingDelegate(delegate));
+    }
+  }
+
+  /** Runs every request in a CountingEnvironment and records its count. */
+  private class DatastoreCallsFilter implements Filter {
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+      ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+      CountingEnvironment counting = new CountingEnvironment(environment);
+      ApiProxy.setEnvironmentForCurrentThread(counting);
+      try {
+        chain.doFilter(request, response);
+      } finally {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        String type = ((HttpServletRequest) request).getHeader(REQUEST_TYPE_HEADER);
+        if (type != null) {
+          requestsByType.computeIfAbsent(type, key -> new LongAdder()).increment();
+          datastoreCallsByType.computeIfAbsent(type, key -> new LongAdder()).add(counting.datastoreCalls.sum());
+        }
+      }
+    }
+
+    @Override
+    public void destroy() {
+    }
+  }
+
+  /** The environment of one request, with the count of its Datastore calls. */
+  private static class CountingEnvironment implements ApiProxy.Environment {
+    private final ApiProxy.Environment environment;
+    private final LongAdder datastoreCalls = new LongAdder();
+
+    private CountingEnvironment(ApiProxy.Environment environment) {
+      this.environment = environment;
+    }
+
+    @Override
+    public String getAppId() {
+      return environment.getAppId();
+    }
+
+    @Override
+    public String getModuleId() {
+      return environment.getModuleId();
+    }
+
+    @Override
+    public String getVersionId() {
+      return environment.getVersionId();
+    }
+
+    @Override
+    public String getEmail() {
+      return environment.getEmail();
+    }
+
+    @Override
+    public boolean isLoggedIn() {
+      return environment.isLoggedIn();
+    }
+
+    @Override
+    public boolean isAdmin() {
+      return environment.isAdmin();
+    }
+
+    @Override
+    public String getAuthDomain() {
+      return environment.getAuthDomain();
+    }
+
+    @Override
+    @Deprecated
+    public String getRequestNamespace() {
+      return environment.getRequestNamespace();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+      return environment.getAttributes();
+    }
+
+    @Override
+    public long getRemainingMillis() {
+      return environment.getRemainingMillis();
+    }
+  }
+
+  /**
+   * Counts the Datastore calls made in a CountingEnvironment and hands every
+   * call to the local services in the environment it wraps.
+   */
+  private static class CountingDelegate implements ApiProxy.Delegate<ApiProxy.Environment> {
+    private final ApiProxy.Delegate<ApiProxy.Environment> delegate;
+
+    private CountingDelegate(ApiProxy.Delegate<ApiProxy.Environment> delegate) {
+      this.delegate = delegate;
+    }
+
+    private static ApiProxy.Environment count(ApiProxy.Environment environment, String packageName) {
+      if (environment instanceof CountingEnvironment == false) {
+        return environment;
+      }
+      CountingEnvironment counting = (CountingEnvironment) environment;
+      if (packageName.startsWith("datastore")) {
+        counting.datastoreCalls.increment();
+      }
+      return counting.environment;
+    }
+
+    private static ApiProxy.Environment unwrap(ApiProxy.Environment environment) {
+      return environment instanceof CountingEnvironment ? ((CountingEnvironment) environment).environment
+          : environment;
+    }
+
+    @Override
+    public byte[] makeSyncCall(ApiProxy.Environment environment, String packageName, String methodName,
+        byte[] request) {
+      return delegate.makeSyncCall(count(environment, packageName), packageName, methodName, request);
+    }
+
+    @Override
+    public Future<byte[]> makeAsyncCall(ApiProxy.Environment environment, String packageName, String methodName,
+        byte[] request, ApiProxy.ApiConfig apiConfig) {
+      return delegate.makeAsyncCall(count(environment, packageName), packageName, methodName, request, apiConfig);
+    }
+
+    @Override
+    public void log(ApiProxy.Environment environment, ApiProxy.LogRecord record) {
+      delegate.log(unwrap(environment), record);
+    }
+
+    @Override
+    public void flushLogs(ApiProxy.Environment environment) {
+      delegate.flushLogs(unwrap(environment));
+    }
+
+    @Override
+    public List<Thread> getRequestThreads(ApiProxy.Environment environment) {
+      return delegate.getRequestThreads(unwrap(environment));
+    }
+  }
+}
@@ -0,0 +1,130 @@
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.apphosting.api.ApiProxy;
+
+/**
+ * Checks that every write bumps the version of a book, exposed as its ETag,
+ * and that PUT and DELETE only change the book when If-Match holds.
+ */
+public class BooksVersioningTest {
+
+  private static BooksTestServer server;
+  private static BooksTestClient client;
+
+  @BeforeClass
+  public static void startServer() throws Exception {
+    server = BooksTestServer.start();
+    client = new BooksTestClient(server);
+  }
+
+  @AfterClass
+  public static void stopServer() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void writesBumpTheETag() throws Exception {
+    String id = client.create(BooksTestClient.BOOK);
+    Assert.assertEquals("\"1\"", client.send("GET", "/books/" + id, null).eTag);
+    BooksTestClient.Response updated = client.send("PUT", "/books/" + id, "{\"pages\":210}");
+    Assert.assertEquals(200, updated.status);
+    Assert.assertEquals("\"2\"", updated.eTag);
+    Assert.assertEquals("\"2\"", client.send("GET", "/books/" + id, null).eTag);
+  }
+
+  @Test
+  public void updateOnlyWhenIfMatchHolds() throws Exception {
+    String id = client.create(BooksTestClient.BOOK);
+    BooksTestClient.Response stale = client.send("PUT", "/books/" + id, "{\"pages\":210}", "If-Match", "\"7\"");
+    Assert.assertEquals(412, stale.status);
+    Assert.assertTrue(stale.json().has("PRECONDITION_FAILED"));
+    Assert.assertEquals("\"1\"", stale.eTag);
+    Assert.assertEquals(209, client.send("GET", "/books/" + id, null).json().get("pages").getAsInt());
+
+    Assert.assertEquals(200, client.send("PUT", "/books/" + id, "{\"pages\":210}", "If-Match", "\"0\", \"1\"").status);
+    Assert.assertEquals(200, client.send("PUT", "/books/" + id, "{\"pages\":211}", "If-Match", "*").status);
+    Assert.assertEquals(412, client.send("PUT", "/books/" + id, "{\"pages\":212}", "If-Match", "\"2\"").status);
+    Assert.assertEquals(211, client.send("GET", "/books/" + id, null).json().get("pages").getAsInt());
+  }
+
+  @Test
+  public void deleteOnlyWhenIfMatchHolds() throws Exception {
+    String id = client.create(BooksTestClient.BOOK);
+    Assert.assertEquals(412, client.send("DELETE", "/books/" + id, null, "If-Match", "\"2\"").status);
+    Assert.assertEquals(200, client.send("GET", "/books/" + id, null).status);
+    Assert.assertEquals(200, client.send("DELETE", "/books/" + id, null, "If-Match", "\"1\"").status);
+    Assert.assertEquals(404, client.send("GET", "/books/" + id, null).status);
+  }
+
+  @Test
+  public void writesToUnknownBooksAreNotFound() throws Exception {
+    Assert.assertEquals(404, client.send("PUT", "/books/unknown", "{\"pages\":210}").status);
+    Assert.assertEquals(404, client.send("DELETE", "/books/unknown", null).status);
+    Assert.assertEquals(404, client.send("DELETE", "/books/unknown", null, "If-Match", "*").status);
+  }
+
+  @Test
+  public void datastoreFailuresAreNotReportedAsNotFound() throws Exception {
+    String id = client.create(BooksTestClient.BOOK);
+    ApiProxy.Delegate<ApiProxy.Environment> delegate = failingGets();
+    try {
+      Assert.assertEquals(503, client.send("GET", "/books/never-cached", null).status);
+      Assert.assertEquals(503, client.send("PUT", "/books/" + id, "{\"pages\":210}").status);
+      Assert.assertEquals(503, client.send("DELETE", "/books/" + id, null).status);
+    } finally {
+      ApiProxy.setDelegate(delegate);
+    }
+    Assert.assertEquals(209, client.send("GET", "/books/" + id, null).json().get("pages").getAsInt());
+  }
+
+  /**
+   * Makes every Datastore get fail like an unavailable Datastore would.
+   *
+   * @return the delegate to restore
+   */
+  @SuppressWarnings("unchecked")
+  private static ApiProxy.Delegate<ApiProxy.Environment> failingGets() {
+    ApiProxy.Delegate<ApiProxy.Environment> delegate = ApiProxy.getDelegate();
+    ApiProxy.setDelegate(new ApiProxy.Delegate<ApiProxy.Environment>() {
+      @Override
+      public byte[] makeSyncCall(ApiProxy.Environment environment, String packageName, String methodName,
+          byte[] request) {
+        if (packageName.equals("datastore_v3") && methodName.equals("Get")) {
+          throw new ApiProxy.RPCFailedException(packageName, methodName);
+        }
+        return delegate.makeSyncCall(environment, packageName, methodName, request);
+      }
+
+      @Override
+      public Future<byte[]> makeAsyncCall(ApiProxy.Environment environment, String packageName, String methodName,
+          byte[] request, ApiProxy.ApiConfig apiConfig) {
+        if (packageName.equals("datastore_v3") && methodName.equals("Get")) {
+          throw new ApiProxy.RPCFailedException(packageName, methodName);
+        }
+        return delegate.makeAsyncCall(environment, packageName, methodName, request, apiConfig);
+      }
+
+      @Override
+      public void log(ApiProxy.Environment environment, ApiProxy.LogRecord record) {
+        delegate.log(environment, record);
+      }
+
+      @Override
+      public void flushLogs(ApiProxy.Environment environment) {
+        delegate.flushLogs(environment);
+      }
+
+      @Override
+      public List<Thread> getRequestThreads(ApiProxy.Environment environment) {
+        return delegate.getRequestThreads(environment);
+      }
+    });
+    return delegate;
+  }
+}
@@ -11,6 +11,8 @@ import javax.servlet.http.HttpServletResponse;
 )
 public class HelloAppEngine extends HttpServlet {
 
+  private static final long serialVersionUID = 1L;
+
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) 
       throws IOException {
@@ -3,6 +3,8 @@ package com.fullcreative.restapi.controllers;
 import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -10,34 +12,56 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.fullcreative.restapi.models.Book;
+import com.fullcreative.restapi.utilities.BookFields;
 import com.fullcreative.restapi.utilities.BooksControllerUtilities;
+import com.fullcreative.restapi.utilities.BooksEventStream;
+import com.fullcreative.restapi.utilities.BooksLog;
+import com.fullcreative.restapi.utilities.BooksRoute;
+import com.fullcreative.restapi.utilities.RequestBodyTooLargeException;
+import com.google.gson.JsonElement;
 
-@WebServlet(name = "bookServlet", urlPatterns = { "/books", "/books/*" })
+@WebServlet(name = "bookServlet", urlPatterns = { "/books", "/books/*" }, asyncSupported = true)
 public class BooksController extends HttpServlet {
 
 	private static final long serialVersionUID = -8271652320356442502L;
 
+	private static final Logger logger = BooksLog.getLogger(BooksController.class);
+
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
 		try {
 			Map<String, Object> responseMap = new LinkedHashMap<>();
-			if (BooksControllerUtilities.isValidEndPoint(request.getRequestURI())) {
-				if (BooksControllerUtilities.hasBookID(request.getRequestURI())) {
-					String bookID = BooksControllerUtilities.getBookIDFromUri(request);
-					responseMap = BooksControllerUtilities.processGetOneBookRequest(bookID);
-					System.out.println(responseMap);
-					BooksControllerUtilities.sendJsonResponse(response, responseMap);
+			BooksRoute route = BooksRoute.fromRequest(request);
+			if (route.isValid() && route.hasSubResource() == false) {
+				BookFields fields = BookFields.fromRequest(request);
+				if (fields == null) {
+					responseMap = BooksControllerUtilities.invalidFieldsResponse(responseMap);
+					BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
+				} else if (route.isCollectionAction("_stream")) {
+					BooksEventStream.subscribe(request, response);
+				} else if (route.isCollectionAction("_changes")) {
+					responseMap = BooksControllerUtilities.processGetChangesRequest(request, fields);
+					BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
+				} else if (route.hasBookID()) {
+					String bookID = route.getBookID();
+					responseMap = BooksControllerUtilities.processGetOneBookRequest(bookID, fields);
+					BooksControllerUtilities.sendConditionalJsonResponse(request, response, responseMap);
+				} else if (request.getParameter("ids") != null) {
+					responseMap = BooksControllerUtilities.processLookupRequest(request, fields);
+					BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
+				} else if (BooksControllerUtilities.isPageRequest(request)) {
+					responseMap = BooksControllerUtilities.processGetBooksPageRequest(request, fields);
+					BooksControllerUtilities.sendConditionalJsonResponse(request, response, responseMap);
 				} else {
-					String jsonData = BooksControllerUtilities.processGetAllRequest();
-					BooksControllerUtilities.sendJsonResponse(response, jsonData);
+					BooksControllerUtilities.sendGetAllStreamingResponse(request, response, fields);
 				}
 			} else {
 				responseMap = BooksControllerUtilities.invalidRequestEndpointResponse(responseMap);
-				BooksControllerUtilities.sendJsonResponse(response, responseMap);
+				BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
 			}
 		} catch (Exception e) {
-			System.out.println("Caught in doGet servlet service method");
 			BooksControllerUtilities.sendInternalServerErrorResponse(response, e);
 		}
 	}
@@ -48,18 +72,31 @@ public class BooksController extends HttpServlet {
 			throws ServletException, IOException {
 		try {
 			Map<String, Object> responseMap = new LinkedHashMap<>();
-			if (BooksControllerUtilities.hasBookID(request.getRequestURI()) == false
-					&& BooksControllerUtilities.isValidEndPoint(request.getRequestURI())) {
-				// Getting JSON request body and image Part
-				String jsonRequestString = BooksControllerUtilities.payloadFromRequest(request);
-				responseMap = BooksControllerUtilities.processCreateRequest(responseMap, jsonRequestString);
-				BooksControllerUtilities.sendJsonResponse(response, responseMap);
+			BooksRoute route = BooksRoute.fromRequest(request);
+			if (route.isValid() && route.hasBookID() == false) {
+				// Getting JSON request body
+				Book newBook = BooksControllerUtilities.bookFromRequest(request);
+				responseMap = BooksControllerUtilities.processCreateRequest(responseMap, newBook);
+				BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
+			} else if (route.isCollectionAction("_bulk")) {
+				JsonElement requestJson = BooksControllerUtilities.jsonFromRequest(request,
+						BooksControllerUtilities.MAX_BULK_REQUEST_BODY_BYTES);
+				responseMap = BooksControllerUtilities.processBulkRequest(requestJson);
+				BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
+			} else if (route.isCollectionAction("_lookup")) {
+				JsonElement requestJson = BooksControllerUtilities.jsonFromRequest(request,
+						BooksControllerUtilities.MAX_REQUEST_BODY_BYTES);
+				responseMap = BooksControllerUtilities.processLookupRequest(requestJson);
+				BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
 			} else {
 				responseMap = BooksControllerUtilities.invalidRequestEndpointResponse(responseMap);
-				BooksControllerUtilities.sendJsonResponse(response, responseMap);
+				BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
 			}
+		} catch (RequestBodyTooLargeException e) {
+			BooksControllerUtilities.sendRequestBodyTooLargeResponse(response, e);
 		} catch (Exception e) {
-			e.printStackTrace();
+			BooksLog.rateLimitedEvent(logger, Level.INFO, "request.invalid_body", "method", "POST", "uri",
+					request.getRequestURI(), "error", e);
 			BooksControllerUtilities.sendEmptyRequestErrorResponse(response);
 		}
 	}
@@ -69,23 +106,26 @@ public class BooksController extends HttpServlet {
 			throws ServletException, IOException {
 		try {
 			Map<String, Object> responseMap = new LinkedHashMap<>();
-			if (BooksControllerUtilities.hasBookID(request.getRequestURI()) == true
-					&& BooksControllerUtilities.isValidEndPoint(request.getRequestURI())) {
-				String bookID = BooksControllerUtilities.getBookIDFromUri(request);
+			BooksRoute route = BooksRoute.fromRequest(request);
+			if (route.hasBookID() && route.hasSubResource() == false) {
+				String bookID = route.getBookID();
 				// Getting JSON request body
-				String jsonRequestString = BooksControllerUtilities.payloadFromRequest(request);
-				responseMap = BooksControllerUtilities.processUpdateRequest(responseMap, bookID, jsonRequestString);
-				BooksControllerUtilities.sendJsonResponse(response, responseMap);
+				Book newBook = BooksControllerUtilities.bookFromRequest(request);
+				responseMap = BooksControllerUtilities.processUpdateRequest(responseMap, bookID, newBook,
+						request.getHeader("If-Match"));
+				BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
 
 			} else {
 				responseMap = BooksControllerUtilities.invalidRequestEndpointResponse(responseMap);
-				BooksControllerUtilities.sendJsonResponse(response, responseMap);
+				BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
 			}
+		} catch (RequestBodyTooLargeException e) {
+			BooksControllerUtilities.sendRequestBodyTooLargeResponse(response, e);
 		} catch (NullPointerException e) {
-			e.printStackTrace();
+			BooksLog.rateLimitedEvent(logger, Level.INFO, "request.invalid_body", "method", "PUT", "uri",
+					request.getRequestURI(), "error", e);
 			BooksControllerUtilities.sendEmptyRequestErrorResponse(response);
 		} catch (Exception e) {
-			System.out.println("Caught in doPut servlet service method");
 			BooksControllerUtilities.sendInternalServerErrorResponse(response, e);
 		}
 	}
@@ -96,17 +136,16 @@ public class BooksController extends HttpServlet {
 			throws ServletException, IOException {
 		try {
 			Map<String, Object> responseMap = new LinkedHashMap<>();
-			if (BooksControllerUtilities.hasBookID(request.getRequestURI()) == true
-					&& BooksControllerUtilities.isValidEndPoint(request.getRequestURI())) {
-				String bookID = BooksControllerUtilities.getBookIDFromUri(request);
-				responseMap = BooksControllerUtilities.deleteBook(bookID);
-				BooksControllerUtilities.sendJsonResponse(response, responseMap);
+			BooksRoute route = BooksRoute.fromRequest(request);
+			if (route.hasBookID() && route.hasSubResource() == false) {
+				String bookID = route.getBookID();
+				responseMap = BooksControllerUtilities.deleteBook(bookID, request.getHeader("If-Match"));
+				BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
 			} else {
 				responseMap = BooksControllerUtilities.invalidRequestEndpointResponse(responseMap);
-				BooksControllerUtilities.sendJsonResponse(response, responseMap);
+				BooksControllerUtilities.sendJsonResponse(request, response, responseMap);
 			}
 		} catch (Exception e) {
-			System.out.println("Caught in doDelete servlet service method");
 			BooksControllerUtilities.sendInternalServerErrorResponse(response, e);
 		}
 	}
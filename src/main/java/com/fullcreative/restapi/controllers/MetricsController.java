@@ -0,0 +1,66 @@
+package com.fullcreative.restapi.controllers;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fullcreative.restapi.utilities.BooksMetrics;
+
+/**
+ * <p>
+ * Serves the metrics of this instance in the Prometheus text format.
+ * </p>
+ * <p>
+ * Requests must send the <code>books.metricsToken</code> system property as a
+ * bearer token in the Authorization header. Without that property the metrics
+ * aren't served at all and <code>/metrics</code> answers 404.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+@WebServlet(name = "metricsServlet", urlPatterns = { "/metrics" })
+public class MetricsController extends HttpServlet {
+
+	private static final long serialVersionUID = 4117303465232417906L;
+
+	/** The expected Authorization header, null when no token is configured. */
+	private static final byte[] AUTHORIZATION = authorization(System.getProperty("books.metricsToken"));
+
+	private static byte[] authorization(String metricsToken) {
+		if (metricsToken == null || metricsToken.isEmpty()) {
+			return null;
+		}
+		return ("Bearer " + metricsToken).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		if (AUTHORIZATION == null) {
+			response.setStatus(404);
+			return;
+		}
+		String authorization = request.getHeader("Authorization");
+		// Takes the same time wherever the header differs from the token
+		if (authorization == null
+				|| MessageDigest.isEqual(AUTHORIZATION, authorization.getBytes(StandardCharsets.UTF_8)) == false) {
+			response.setHeader("WWW-Authenticate", "Bearer");
+			response.setStatus(401);
+			return;
+		}
+		response.setStatus(200);
+		response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+		response.setHeader("Cache-Control", "no-store");
+		PrintWriter writer = response.getWriter();
+		BooksMetrics.writeTo(writer);
+		writer.flush();
+	}
+}
@@ -0,0 +1,556 @@
+package com.fullcreative.restapi.filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.fullcreative.restapi.utilities.BooksControllerUtilities;
+
+/**
+ * <p>
+ * Compresses the responses of the Books End Points with gzip or deflate, as
+ * negotiated with the <code>Accept-Encoding</code> header of the request.
+ * </p>
+ * <p>
+ * Bodies are compressed while they are written instead of being buffered
+ * whole. Bodies smaller than <code>books.compression.minBytes</code> (1024 by
+ * default) are sent as they are, since compressing them saves less than it
+ * costs: when the servlet sets the Content-Length up front the decision is
+ * made on it, otherwise the first bytes are held back until the body is known
+ * to be larger. Only text and JSON bodies are compressed, and never event
+ * streams, which must reach the client as soon as they are flushed.
+ * </p>
+ * <p>
+ * A Deflater holds native memory until it is ended, so idle Deflaters are
+ * kept in a small pool per encoding, shared by all the request threads, and
+ * reused for each response. Unlike a per-thread cache, the pool still works
+ * when every request runs on a new virtual thread. It holds
+ * <code>books.compression.poolSize</code> (twice the number of cores by
+ * default) Deflaters per encoding. The level is set with
+ * <code>books.compression.level</code>.
+ * </p>
+ * <p>
+ * A strong ETag names the bytes of a response, so a compressed response gets
+ * the encoding appended to it, e.g. <code>"3-gzip"</code>. The Books End
+ * Points accept both forms in If-Match and If-None-Match.
+ * </p>
+ * <p>
+ * Asynchronous responses are finished when the servlet closes the output
+ * stream, which it must do before completing the request.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+@WebFilter(filterName = "compressionFilter", urlPatterns = { "/books", "/books/*" }, asyncSupported = true)
+public class CompressionFilter implements Filter {
+
+	private static final int MIN_BYTES = Integer.getInteger("books.compression.minBytes", 1024);
+	private static final int LEVEL = Integer.getInteger("books.compression.level", Deflater.DEFAULT_COMPRESSION);
+	private static final int POOL_SIZE = Math.max(1,
+			Integer.getInteger("books.compression.poolSize", 2 * Runtime.getRuntime().availableProcessors()));
+
+	private static final String GZIP = "gzip";
+	private static final String DEFLATE = "deflate";
+
+	/** Gzip member header: magic number, deflate method, no flags, no mtime. */
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+	/** The idle Deflaters, for gzip and for deflate. */
+	private static final BlockingQueue<Deflater> idleGzipDeflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+	private static final BlockingQueue<Deflater> idleDeflateDeflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+	}
+
+	@Override
+	public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+			throws IOException, ServletException {
+		HttpServletRequest request = (HttpServletRequest) servletRequest;
+		HttpServletResponse response = (HttpServletResponse) servletResponse;
+		// Set whatever the outcome, so caches keep the encodings apart
+		response.addHeader("Vary", "Accept-Encoding");
+		String encoding = "HEAD".equals(request.getMethod()) ? null
+				: negotiateEncoding(request.getHeader("Accept-Encoding"));
+		if (encoding == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+		CompressionResponse compressionResponse = new CompressionResponse(response, encoding);
+		boolean served = false;
+		try {
+			chain.doFilter(request, compressionResponse);
+			served = true;
+		} finally {
+			if (served == false) {
+				compressionResponse.abandon();
+			}
+		}
+		if (compressionResponse.getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
+			keepCachedETag(request, response, encoding);
+		}
+		if (request.isAsyncStarted()) {
+			request.getAsyncContext().addListener(new AsyncListener() {
+				@Override
+				public void onComplete(AsyncEvent event) throws IOException {
+					compressionResponse.abandon();
+				}
+
+				@Override
+				public void onTimeout(AsyncEvent event) throws IOException {
+				}
+
+				@Override
+				public void onError(AsyncEvent event) throws IOException {
+				}
+
+				@Override
+				public void onStartAsync(AsyncEvent event) throws IOException {
+				}
+			});
+		} else {
+			compressionResponse.finish();
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+	/**
+	 * <p>
+	 * Picks the encoding with the highest quality value in an Accept-Encoding
+	 * header, preferring gzip on a tie.
+	 * </p>
+	 *
+	 * @param acceptEncoding
+	 * @return String - gzip, deflate or null when the client accepts neither
+	 */
+	static String negotiateEncoding(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
+		}
+		double gzip = -1;
+		double deflate = -1;
+		double any = -1;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parameters = coding.split(";");
+			double quality = 1;
+			for (int i = 1; i < parameters.length; i++) {
+				String parameter = parameters[i].trim();
+				if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+					try {
+						quality = Double.parseDouble(parameter.substring(2));
+					} catch (NumberFormatException e) {
+						quality = 0;
+					}
+				}
+			}
+			switch (parameters[0].trim().toLowerCase(Locale.ROOT)) {
+			case "gzip":
+			case "x-gzip":
+				gzip = Math.max(gzip, quality);
+				break;
+			case DEFLATE:
+				deflate = Math.max(deflate, quality);
+				break;
+			case "*":
+				any = quality;
+				break;
+			default:
+				break;
+			}
+		}
+		gzip = gzip < 0 ? any : gzip;
+		deflate = deflate < 0 ? any : deflate;
+		if (gzip > 0 && gzip >= deflate) {
+			return GZIP;
+		}
+		return deflate > 0 ? DEFLATE : null;
+	}
+
+	/**
+	 * <p>
+	 * A 304 response carries the ETag of the response it stands for. When the
+	 * client's copy is the compressed one, its ETag is sent back as it is.
+	 * </p>
+	 */
+	private static void keepCachedETag(HttpServletRequest request, HttpServletResponse response, String encoding) {
+		String eTag = response.getHeader("ETag");
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (eTag == null || ifNoneMatch == null) {
+			return;
+		}
+		String encodedETag = BooksControllerUtilities.eTagForEncoding(eTag, encoding);
+		for (String candidate : ifNoneMatch.split(",")) {
+			if (candidate.trim().equals(encodedETag)) {
+				response.setHeader("ETag", encodedETag);
+				return;
+			}
+		}
+	}
+
+	private static Deflater acquireDeflater(boolean gzip) {
+		Deflater deflater = (gzip ? idleGzipDeflaters : idleDeflateDeflaters).poll();
+		if (deflater == null) {
+			// Gzip wraps the raw deflate stream in a header and trailer of its own
+			return new Deflater(LEVEL, gzip);
+		}
+		return deflater;
+	}
+
+	private static void returnDeflater(Deflater deflater, boolean gzip) {
+		deflater.reset();
+		if ((gzip ? idleGzipDeflaters : idleDeflateDeflaters).offer(deflater) == false) {
+			deflater.end();
+		}
+	}
+
+	/** Holds back the Content-Length until the body is known to be sent as is. */
+	private static class CompressionResponse extends HttpServletResponseWrapper {
+		private final String encoding;
+		private long contentLength = -1;
+		private CompressionOutputStream outputStream;
+		private PrintWriter writer;
+
+		private CompressionResponse(HttpServletResponse response, String encoding) {
+			super(response);
+			this.encoding = encoding;
+		}
+
+		private HttpServletResponse wrapped() {
+			return (HttpServletResponse) getResponse();
+		}
+
+		private boolean isCompressible() {
+			int status = getStatus();
+			if (status < 200 || status == 204 || status == 304 || containsHeader("Content-Encoding")) {
+				return false;
+			}
+			String contentType = getContentType();
+			if (contentType == null) {
+				return false;
+			}
+			contentType = contentType.toLowerCase(Locale.ROOT);
+			if (contentType.startsWith("text/event-stream")) {
+				return false;
+			}
+			return contentType.startsWith("text/") || contentType.contains("json") || contentType.contains("xml")
+					|| contentType.contains("javascript");
+		}
+
+		@Override
+		public void setContentLength(int length) {
+			setContentLengthLong(length);
+		}
+
+		@Override
+		public void setContentLengthLong(long length) {
+			if (outputStream != null && outputStream.isStarted()) {
+				if (outputStream.isCompressing() == false) {
+					super.setContentLengthLong(length);
+				}
+			} else {
+				contentLength = length;
+			}
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (writer != null) {
+				throw new IllegalStateException("getWriter() has already been called");
+			}
+			return stream();
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				if (outputStream != null) {
+					throw new IllegalStateException("getOutputStream() has already been called");
+				}
+				writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+			}
+			return writer;
+		}
+
+		private CompressionOutputStream stream() {
+			if (outputStream == null) {
+				outputStream = new CompressionOutputStream(this);
+			}
+			return outputStream;
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (outputStream != null) {
+				// Committing the response commits to an encoding
+				outputStream.start(true);
+				outputStream.flush();
+			}
+			super.flushBuffer();
+		}
+
+		@Override
+		public void resetBuffer() {
+			super.resetBuffer();
+			if (outputStream != null) {
+				outputStream.discard();
+			}
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			contentLength = -1;
+			if (outputStream != null) {
+				outputStream.discard();
+			}
+			super.addHeader("Vary", "Accept-Encoding");
+		}
+
+		/** Writes out what is held back and ends the compressed stream. */
+		private void finish() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (outputStream != null) {
+				outputStream.finish();
+			} else if (contentLength >= 0) {
+				super.setContentLengthLong(contentLength);
+			}
+		}
+
+		/** Releases the Deflater of a response that won't be finished. */
+		private void abandon() {
+			if (outputStream != null) {
+				outputStream.releaseDeflater();
+			}
+		}
+	}
+
+	/**
+	 * Buffers the first bytes of the body until the encoding is decided, then
+	 * writes them through a DeflaterOutputStream or straight to the response.
+	 */
+	private static class CompressionOutputStream extends ServletOutputStream {
+		private final CompressionResponse response;
+		private final boolean gzip;
+		private final byte[] singleByte = new byte[1];
+		private byte[] heldBack;
+		private int heldBackCount;
+		/** Null until the encoding is decided. */
+		private OutputStream target;
+		private Deflater deflater;
+		private DeflaterOutputStream deflaterStream;
+		private CRC32 crc;
+		private boolean finished;
+
+		private CompressionOutputStream(CompressionResponse response) {
+			this.response = response;
+			this.gzip = GZIP.equals(response.encoding);
+		}
+
+		private boolean isStarted() {
+			return target != null;
+		}
+
+		private boolean isCompressing() {
+			return deflaterStream != null;
+		}
+
+		/**
+		 * Decides on the encoding, sets the headers that go with it and writes
+		 * out the bytes held back so far.
+		 */
+		private void start(boolean largeEnough) throws IOException {
+			if (target != null) {
+				return;
+			}
+			OutputStream out = response.wrapped().getOutputStream();
+			if (largeEnough && response.isCompressible()) {
+				response.wrapped().setHeader("Content-Encoding", response.encoding);
+				String eTag = response.wrapped().getHeader("ETag");
+				if (eTag != null) {
+					response.wrapped().setHeader("ETag", BooksControllerUtilities.eTagForEncoding(eTag, response.encoding));
+				}
+				deflater = acquireDeflater(gzip);
+				if (gzip) {
+					out.write(GZIP_HEADER);
+					crc = new CRC32();
+				}
+				// Sync flush, so a streamed body reaches the client when it is flushed
+				deflaterStream = new DeflaterOutputStream(out, deflater, 8192, true);
+				target = deflaterStream;
+			} else {
+				if (response.contentLength >= 0) {
+					response.wrapped().setContentLengthLong(response.contentLength);
+				}
+				target = out;
+			}
+			if (heldBackCount > 0) {
+				writeToTarget(heldBack, 0, heldBackCount);
+				heldBackCount = 0;
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			singleByte[0] = (byte) b;
+			write(singleByte, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int length) throws IOException {
+			if (finished) {
+				throw new IOException("Response already finished");
+			}
+			if (target == null) {
+				long contentLength = response.contentLength;
+				if (contentLength < 0 && heldBackCount + length < MIN_BYTES) {
+					if (heldBack == null) {
+						heldBack = new byte[MIN_BYTES];
+					}
+					System.arraycopy(buffer, offset, heldBack, heldBackCount, length);
+					heldBackCount += length;
+					return;
+				}
+				start(contentLength < 0 || contentLength >= MIN_BYTES);
+			}
+			writeToTarget(buffer, offset, length);
+		}
+
+		private void writeToTarget(byte[] buffer, int offset, int length) throws IOException {
+			if (crc != null) {
+				crc.update(buffer, offset, length);
+			}
+			target.write(buffer, offset, length);
+		}
+
+		/**
+		 * Flushing a small body that may still be compressed keeps it held back,
+		 * anything else is flushed through.
+		 */
+		@Override
+		public void flush() throws IOException {
+			if (finished) {
+				return;
+			}
+			if (target == null) {
+				if (response.isCompressible()) {
+					return;
+				}
+				start(false);
+			}
+			target.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			finish();
+			response.wrapped().getOutputStream().close();
+		}
+
+		private void finish() throws IOException {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			if (target == null) {
+				// The whole body is smaller than the threshold
+				if (response.contentLength < 0) {
+					response.contentLength = heldBackCount;
+				}
+				start(false);
+				return;
+			}
+			if (deflaterStream != null) {
+				try {
+					deflaterStream.finish();
+					if (gzip) {
+						OutputStream out = response.wrapped().getOutputStream();
+						writeIntLE(out, (int) crc.getValue());
+						writeIntLE(out, (int) deflater.getBytesRead());
+					}
+				} finally {
+					releaseDeflater();
+				}
+			}
+		}
+
+		private static void writeIntLE(OutputStream out, int value) throws IOException {
+			out.write(value);
+			out.write(value >>> 8);
+			out.write(value >>> 16);
+			out.write(value >>> 24);
+		}
+
+		/** Drops the body written so far, after the response buffer was reset. */
+		private void discard() {
+			if (deflaterStream != null) {
+				response.wrapped().setHeader("Content-Encoding", null);
+				String eTag = response.wrapped().getHeader("ETag");
+				if (eTag != null) {
+					response.wrapped().setHeader("ETag", BooksControllerUtilities.eTagWithoutEncoding(eTag));
+				}
+			}
+			releaseDeflater();
+			deflaterStream = null;
+			crc = null;
+			target = null;
+			heldBackCount = 0;
+			finished = false;
+		}
+
+		private void releaseDeflater() {
+			if (deflater != null) {
+				returnDeflater(deflater, gzip);
+				deflater = null;
+			}
+		}
+
+		@Override
+		public boolean isReady() {
+			try {
+				return response.wrapped().getOutputStream().isReady();
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			try {
+				response.wrapped().getOutputStream().setWriteListener(writeListener);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package com.fullcreative.restapi.filters;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.fullcreative.restapi.utilities.BooksMetrics;
+import com.fullcreative.restapi.utilities.BooksRoute;
+
+/**
+ * <p>
+ * Records the latency, status and body sizes of every request to the Books
+ * End Points in {@link BooksMetrics}.
+ * </p>
+ * <p>
+ * Requests are labelled with their route template rather than their URI, so
+ * that every book ID doesn't create a series of its own.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+@WebFilter(filterName = "metricsFilter", urlPatterns = { "/books", "/books/*" }, asyncSupported = true)
+public class MetricsFilter implements Filter {
+
+	/** Actions served at /books/{action}, labelled by name instead of as an ID. */
+	private static final String[] COLLECTION_ACTIONS = { "_bulk", "_lookup", "_changes", "_stream" };
+
+	/** Methods labelled by name, all others are labelled as other. */
+	private static final Set<String> METHODS = new HashSet<>(
+			Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+	}
+
+	@Override
+	public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+			throws IOException, ServletException {
+		HttpServletRequest request = (HttpServletRequest) servletRequest;
+		HttpServletResponse response = (HttpServletResponse) servletResponse;
+		String method = METHODS.contains(request.getMethod()) ? request.getMethod() : "other";
+		String endpoint = endpointOf(BooksRoute.fromRequest(request));
+		CountingRequest countingRequest = new CountingRequest(request);
+		CountingResponse countingResponse = new CountingResponse(response);
+		long start = System.nanoTime();
+		BooksMetrics.requestStarted(method);
+		boolean async = false;
+		try {
+			chain.doFilter(countingRequest, countingResponse);
+			countingResponse.flushWriter();
+			if (request.isAsyncStarted()) {
+				async = true;
+				request.getAsyncContext().addListener(new AsyncListener() {
+					@Override
+					public void onComplete(AsyncEvent event) throws IOException {
+						countingResponse.flushWriter();
+						record(method, endpoint, response.getStatus(), start, countingRequest, countingResponse);
+					}
+
+					@Override
+					public void onTimeout(AsyncEvent event) {
+					}
+
+					@Override
+					public void onError(AsyncEvent event) {
+					}
+
+					@Override
+					public void onStartAsync(AsyncEvent event) {
+					}
+				});
+			}
+		} finally {
+			if (async == false) {
+				record(method, endpoint, response.getStatus(), start, countingRequest, countingResponse);
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+	private static void record(String method, String endpoint, int status, long start,
+			CountingRequest request, CountingResponse response) {
+		BooksMetrics.requestCompleted(method, endpoint, status, System.nanoTime() - start, request.bytesRead,
+				response.bytesWritten);
+	}
+
+	/**
+	 * @param route
+	 * @return String - the route template of the request, e.g. /books/{id}
+	 */
+	static String endpointOf(BooksRoute route) {
+		if (route.isValid() == false || route.isCollection("books") == false || route.hasSubResource()) {
+			return "other";
+		}
+		if (route.hasBookID() == false) {
+			return "/books";
+		}
+		for (String action : COLLECTION_ACTIONS) {
+			if (route.isCollectionAction(action)) {
+				return "/books/" + action;
+			}
+		}
+		return "/books/{id}";
+	}
+
+	/** Counts the bytes of the request body read by the servlet. */
+	private static class CountingRequest extends HttpServletRequestWrapper {
+		private long bytesRead;
+		private ServletInputStream inputStream;
+
+		private CountingRequest(HttpServletRequest request) {
+			super(request);
+		}
+
+		@Override
+		public ServletInputStream getInputStream() throws IOException {
+			if (inputStream == null) {
+				ServletInputStream wrapped = super.getInputStream();
+				inputStream = new ServletInputStream() {
+					@Override
+					public int read() throws IOException {
+						int b = wrapped.read();
+						if (b != -1) {
+							bytesRead++;
+						}
+						return b;
+					}
+
+					@Override
+					public int read(byte[] buffer, int offset, int length) throws IOException {
+						int read = wrapped.read(buffer, offset, length);
+						if (read > 0) {
+							bytesRead += read;
+						}
+						return read;
+					}
+
+					@Override
+					public boolean isFinished() {
+						return wrapped.isFinished();
+					}
+
+					@Override
+					public boolean isReady() {
+						return wrapped.isReady();
+					}
+
+					@Override
+					public void setReadListener(ReadListener readListener) {
+						wrapped.setReadListener(readListener);
+					}
+				};
+			}
+			return inputStream;
+		}
+	}
+
+	/** Counts the bytes of the response body written by the servlet. */
+	private static class CountingResponse extends HttpServletResponseWrapper {
+		private long bytesWritten;
+		private ServletOutputStream outputStream;
+		private PrintWriter writer;
+
+		private CountingResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (outputStream == null) {
+				ServletOutputStream wrapped = super.getOutputStream();
+				outputStream = new ServletOutputStream() {
+					@Override
+					public void write(int b) throws IOException {
+						wrapped.write(b);
+						bytesWritten++;
+					}
+
+					@Override
+					public void write(byte[] buffer, int offset, int length) throws IOException {
+						wrapped.write(buffer, offset, length);
+						bytesWritten += length;
+					}
+
+					@Override
+					public void flush() throws IOException {
+						wrapped.flush();
+					}
+
+					@Override
+					public boolean isReady() {
+						return wrapped.isReady();
+					}
+
+					@Override
+					public void setWriteListener(WriteListener writeListener) {
+						wrapped.setWriteListener(writeListener);
+					}
+				};
+			}
+			return outputStream;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException, UnsupportedEncodingException {
+			if (writer == null) {
+				writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+			}
+			return writer;
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			flushWriter();
+			super.flushBuffer();
+		}
+
+		private void flushWriter() {
+			if (writer != null) {
+				writer.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.fullcreative.restapi.filters;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import com.fullcreative.restapi.utilities.BooksLog;
+import com.fullcreative.restapi.utilities.RequestTimer;
+
+/**
+ * <p>
+ * Times every request to the Books End Points with a {@link RequestTimer} and
+ * reports the phases in the <code>Server-Timing</code> response header.
+ * </p>
+ * <p>
+ * The header is set when the servlet starts writing the body, and set again
+ * with the final timings once the servlet returns if the response hasn't been
+ * committed by then, which is the case for every response that fits the
+ * response buffer.
+ * </p>
+ * <p>
+ * Requests slower than <code>books.slowRequestThresholdMillis</code> (1000 by
+ * default) are logged with their timings, sampled at
+ * <code>books.slowRequestLogSampleRate</code> (0.1 by default, 0 disables the
+ * log).
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+@WebFilter(filterName = "serverTimingFilter", urlPatterns = { "/books", "/books/*" }, asyncSupported = true)
+public class ServerTimingFilter implements Filter {
+
+	private static final Logger logger = BooksLog.getLogger(ServerTimingFilter.class);
+
+	private static final long SLOW_REQUEST_THRESHOLD_NANOS = Long.getLong("books.slowRequestThresholdMillis", 1000)
+			* 1_000_000;
+	private static final double SLOW_REQUEST_LOG_SAMPLE_RATE = Double
+			.parseDouble(System.getProperty("books.slowRequestLogSampleRate", "0.1"));
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+	}
+
+	@Override
+	public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+			throws IOException, ServletException {
+		HttpServletRequest request = (HttpServletRequest) servletRequest;
+		HttpServletResponse response = (HttpServletResponse) servletResponse;
+		RequestTimer timer = RequestTimer.start();
+		try {
+			chain.doFilter(request, new ServerTimingResponse(response, timer));
+		} finally {
+			RequestTimer.stop();
+			String serverTiming = timer.toServerTiming();
+			if (response.isCommitted() == false) {
+				response.setHeader("Server-Timing", serverTiming);
+			}
+			if (timer.getElapsedNanos() >= SLOW_REQUEST_THRESHOLD_NANOS
+					&& ThreadLocalRandom.current().nextDouble() < SLOW_REQUEST_LOG_SAMPLE_RATE) {
+				BooksLog.event(logger, Level.WARNING, "request.slow", "method", request.getMethod(), "uri",
+						request.getRequestURI(), "status", response.getStatus(), "serverTiming", serverTiming);
+			}
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+	/** Sets the Server-Timing header before the first byte of the body. */
+	private static class ServerTimingResponse extends HttpServletResponseWrapper {
+		private final RequestTimer timer;
+		private boolean headerSet;
+
+		private ServerTimingResponse(HttpServletResponse response, RequestTimer timer) {
+			super(response);
+			this.timer = timer;
+		}
+
+		private void setServerTimingHeader() {
+			if (headerSet == false && isCommitted() == false) {
+				setHeader("Server-Timing", timer.toServerTiming());
+				headerSet = true;
+			}
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			setServerTimingHeader();
+			return super.getOutputStream();
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			setServerTimingHeader();
+			return super.getWriter();
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			setServerTimingHeader();
+			super.flushBuffer();
+		}
+	}
+}
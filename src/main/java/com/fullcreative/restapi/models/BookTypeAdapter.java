@@ -0,0 +1,87 @@
+package com.fullcreative.restapi.models;
+
+import java.io.IOException;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * <p>
+ * Streaming Gson TypeAdapter for the {@link Book} POJO.
+ * </p>
+ * <p>
+ * Reads and writes the six Book fields directly, so Gson doesn't need
+ * reflection to serialize or deserialize a Book. Fields are written in the
+ * order they are declared in the Book POJO and unknown names are skipped while
+ * reading.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BookTypeAdapter extends TypeAdapter<Book> {
+
+	@Override
+	public void write(JsonWriter out, Book book) throws IOException {
+		if (book == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		out.name("id").value(book.getId());
+		out.name("author").value(book.getAuthor());
+		out.name("language").value(book.getLanguage());
+		out.name("pages").value(book.getPages());
+		out.name("title").value(book.getTitle());
+		out.name("releaseYear").value(book.getReleaseYear());
+		out.endObject();
+	}
+
+	@Override
+	public Book read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		Book book = new Book();
+		try {
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if (in.peek() == JsonToken.NULL) {
+					in.nextNull();
+					continue;
+				}
+				switch (name) {
+				case "id":
+					book.setId(in.nextString());
+					break;
+				case "author":
+					book.setAuthor(in.nextString());
+					break;
+				case "language":
+					book.setLanguage(in.nextString());
+					break;
+				case "pages":
+					book.setPages(in.nextInt());
+					break;
+				case "title":
+					book.setTitle(in.nextString());
+					break;
+				case "releaseYear":
+					book.setReleaseYear(in.nextInt());
+					break;
+				default:
+					in.skipValue();
+				}
+			}
+			in.endObject();
+		} catch (IllegalStateException | NumberFormatException e) {
+			throw new JsonSyntaxException(e);
+		}
+		return book;
+	}
+}
@@ -0,0 +1,171 @@
+package com.fullcreative.restapi.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * <p>
+ * java.util.logging Handler that hands records to other Handlers on a
+ * background thread, so logging never waits for console or log service I/O
+ * on the request thread.
+ * </p>
+ * <p>
+ * Records are queued in a bounded queue. When the queue is full the record is
+ * dropped rather than blocking the request, and counted in
+ * {@link #getDroppedCount()}. If the background thread can't be started, as
+ * in environments that don't allow threads to outlive a request, or has died,
+ * records are published on the calling thread instead.
+ * </p>
+ * <p>
+ * A delegate that fails to publish a record is reported to the ErrorManager
+ * of this Handler, and the other delegates and records are still published.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class AsyncLogHandler extends Handler {
+
+	private static final LongAdder dropped = new LongAdder();
+
+	private final Handler[] delegates;
+	private final BlockingQueue<LogRecord> queue;
+	/** Null if it couldn't be started. */
+	private final Thread worker;
+	/** Records queued so far, {@link #flush()} waits until they are published. */
+	private final AtomicLong queuedCount = new AtomicLong();
+	/** Guards {@link #publishedCount}, flushing threads wait on it. */
+	private final Object progress = new Object();
+	private long publishedCount;
+
+	/**
+	 * @param delegates - the Handlers that publish the records
+	 * @param capacity  - the number of records that can wait to be published
+	 */
+	public AsyncLogHandler(Handler[] delegates, int capacity) {
+		this.delegates = delegates.clone();
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.worker = startWorker();
+	}
+
+	private Thread startWorker() {
+		try {
+			Thread thread = new Thread(this::publishQueuedRecords, "books-async-log");
+			thread.setDaemon(true);
+			thread.start();
+			return thread;
+		} catch (RuntimeException | Error e) {
+			return null;
+		}
+	}
+
+	private boolean isWorkerAlive() {
+		return worker != null && worker.isAlive();
+	}
+
+	@Override
+	public void publish(LogRecord record) {
+		if (isLoggable(record) == false) {
+			return;
+		}
+		if (isWorkerAlive() == false) {
+			// Records queued before the worker died go first
+			for (LogRecord queued = queue.poll(); queued != null; queued = queue.poll()) {
+				publishToDelegates(queued);
+			}
+			publishToDelegates(record);
+		} else {
+			// The caller is inferred from the stack, which is the worker's once queued
+			record.getSourceClassName();
+			record.getSourceMethodName();
+			if (queue.offer(record)) {
+				queuedCount.incrementAndGet();
+			} else {
+				dropped.increment();
+			}
+		}
+	}
+
+	private void publishQueuedRecords() {
+		List<LogRecord> records = new ArrayList<>();
+		try {
+			while (true) {
+				try {
+					records.add(queue.take());
+					queue.drainTo(records);
+					for (LogRecord record : records) {
+						publishToDelegates(record);
+					}
+				} catch (InterruptedException e) {
+					return;
+				} finally {
+					synchronized (progress) {
+						publishedCount += records.size();
+						progress.notifyAll();
+					}
+					records.clear();
+				}
+			}
+		} finally {
+			// Flushing threads stop waiting for a worker that died
+			synchronized (progress) {
+				progress.notifyAll();
+			}
+		}
+	}
+
+	private void publishToDelegates(LogRecord record) {
+		for (Handler delegate : delegates) {
+			try {
+				delegate.publish(record);
+			} catch (RuntimeException e) {
+				reportError("Delegate " + delegate.getClass().getName() + " failed to publish a record", e,
+						ErrorManager.WRITE_FAILURE);
+			}
+		}
+	}
+
+	/**
+	 * Waits up to a second for the records queued so far to be published, then
+	 * flushes the delegates.
+	 */
+	@Override
+	public void flush() {
+		long queued = queuedCount.get();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+		synchronized (progress) {
+			try {
+				long wait = deadline - System.nanoTime();
+				while (publishedCount < queued && isWorkerAlive() && wait > 0) {
+					TimeUnit.NANOSECONDS.timedWait(progress, wait);
+					wait = deadline - System.nanoTime();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		for (Handler delegate : delegates) {
+			delegate.flush();
+		}
+	}
+
+	@Override
+	public void close() {
+		flush();
+	}
+
+	/**
+	 * @return long - the records dropped because the queue was full
+	 */
+	public static long getDroppedCount() {
+		return dropped.sum();
+	}
+}
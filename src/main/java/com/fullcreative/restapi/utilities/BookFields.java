@@ -0,0 +1,208 @@
+package com.fullcreative.restapi.utilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.google.appengine.api.datastore.Projection;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortPredicate;
+
+/**
+ * <p>
+ * The Book fields a client asked for with the <code>fields</code> query
+ * parameter, e.g. <code>?fields=id,title</code>. Without the parameter every
+ * field is served.
+ * </p>
+ * <p>
+ * When a query only needs a few fields, it is turned into a Datastore
+ * projection query, or a keys only query for <code>fields=id</code>, so only
+ * those properties are read from the index. A projection needs an index that
+ * holds all of its properties, see WEB-INF/datastore-indexes.xml. Projections
+ * the Datastore refused for lack of an index are remembered, and those fields
+ * are served by reading the whole Entities and trimming them.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BookFields {
+
+	/** JSON field names of a Book and the Entity Properties they are read from. */
+	private static final Map<String, String> PROPERTIES = new LinkedHashMap<>();
+
+	/** Types the projected Properties are read as. */
+	private static final Map<String, Class<?>> PROPERTY_TYPES = new LinkedHashMap<>();
+
+	static {
+		PROPERTIES.put("id", null);
+		PROPERTIES.put("author", "Author");
+		PROPERTIES.put("title", "Title");
+		PROPERTIES.put("language", "Language");
+		PROPERTIES.put("pages", "Pages");
+		PROPERTIES.put("releaseYear", "ReleaseYear");
+		PROPERTY_TYPES.put("Author", String.class);
+		PROPERTY_TYPES.put("Title", String.class);
+		PROPERTY_TYPES.put("Language", String.class);
+		PROPERTY_TYPES.put("Pages", Long.class);
+		PROPERTY_TYPES.put("ReleaseYear", Long.class);
+		PROPERTY_TYPES.put("CreatedOrUpdated", Date.class);
+	}
+
+	/** Every field of a Book. */
+	public static final BookFields ALL = new BookFields(PROPERTIES.keySet());
+
+	/** Projections that failed for lack of an index, by their properties. */
+	private static final Set<String> unindexedProjections = ConcurrentHashMap.newKeySet();
+
+	private final Set<String> names;
+
+	private BookFields(Set<String> names) {
+		this.names = Collections.unmodifiableSet(names);
+	}
+
+	/**
+	 * <p>
+	 * Reads the comma separated <code>fields</code> query parameter. The id is
+	 * always served, whether it was asked for or not.
+	 * </p>
+	 *
+	 * @param request
+	 * @return BookFields - {@link #ALL} without the parameter, null if it names
+	 *         a field a Book doesn't have
+	 */
+	public static BookFields fromRequest(HttpServletRequest request) {
+		String fields = request.getQueryString() != null ? request.getParameter("fields") : null;
+		if (fields == null) {
+			return ALL;
+		}
+		Set<String> requested = new LinkedHashSet<>();
+		requested.add("id");
+		for (String field : fields.split(",")) {
+			field = field.trim();
+			if (PROPERTIES.containsKey(field) == false) {
+				return null;
+			}
+			requested.add(field);
+		}
+		if (requested.size() == PROPERTIES.size()) {
+			return ALL;
+		}
+		// Keep the order of the Book fields, whatever the order of the parameter
+		Set<String> names = new LinkedHashSet<>(PROPERTIES.keySet());
+		names.retainAll(requested);
+		return new BookFields(names);
+	}
+
+	/**
+	 * @return String - the names of the fields a Book has, for error messages
+	 */
+	public static String allFieldNames() {
+		return String.join(",", PROPERTIES.keySet());
+	}
+
+	/**
+	 * @return boolean - true if every field is served
+	 */
+	public boolean isAll() {
+		return names.size() == PROPERTIES.size();
+	}
+
+	/**
+	 * @return List<String> - the Entity Properties of the fields, without the id
+	 */
+	public List<String> getProperties() {
+		List<String> properties = new ArrayList<>();
+		for (String name : names) {
+			if (PROPERTIES.get(name) != null) {
+				properties.add(PROPERTIES.get(name));
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * @param field - JSON field name, e.g. releaseYear
+	 * @return boolean
+	 */
+	public boolean includes(String field) {
+		return names.contains(field);
+	}
+
+	/**
+	 * <p>
+	 * Turns a query on the Books kind into a projection query reading only these
+	 * fields plus the Properties the query is sorted on, or into a keys only
+	 * query when that leaves no Property to read.
+	 * </p>
+	 * <p>
+	 * A query without sort orders is only projected on a single Property, as the
+	 * built-in index of that Property is the only one that can serve it. Filtered
+	 * queries are not projected, their indexes would need every projected
+	 * Property on top of the filtered ones.
+	 * </p>
+	 *
+	 * @param query
+	 * @return boolean - false if the query was left untouched and reads whole
+	 *         Entities
+	 */
+	public boolean applyProjection(Query query) {
+		if (isAll() || query.getFilter() != null) {
+			return false;
+		}
+		Set<String> properties = new LinkedHashSet<>(getProperties());
+		for (SortPredicate sort : query.getSortPredicates()) {
+			if (PROPERTY_TYPES.containsKey(sort.getPropertyName()) == false) {
+				return false;
+			}
+			properties.add(sort.getPropertyName());
+		}
+		if (properties.isEmpty()) {
+			query.setKeysOnly();
+			return true;
+		}
+		if (properties.size() > 1 && query.getSortPredicates().isEmpty()) {
+			return false;
+		}
+		if (unindexedProjections.contains(properties.toString())) {
+			return false;
+		}
+		for (String property : properties) {
+			query.addProjection(new PropertyProjection(property, PROPERTY_TYPES.get(property)));
+		}
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Marks the projection of a query as not served by any index, so the next
+	 * queries for these fields read whole Entities instead.
+	 * </p>
+	 *
+	 * @param query - a query projected by {@link #applyProjection(Query)}
+	 */
+	public static void projectionNotIndexed(Query query) {
+		Set<String> properties = new LinkedHashSet<>();
+		for (Projection projection : query.getProjections()) {
+			properties.add(projection.getName());
+		}
+		unindexedProjections.add(properties.toString());
+	}
+
+	/**
+	 * @return String - the served field names, comma separated
+	 */
+	@Override
+	public String toString() {
+		return String.join(",", names);
+	}
+}
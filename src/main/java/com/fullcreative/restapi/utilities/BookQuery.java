@@ -0,0 +1,197 @@
+package com.fullcreative.restapi.utilities;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.Filter;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+
+/**
+ * <p>
+ * Filters and sort order of a list of Books, read from the query parameters
+ * of <code>GET /books</code>:
+ * </p>
+ * <ul>
+ * <li><code>language</code>, <code>author</code> - equality filters</li>
+ * <li><code>minReleaseYear</code>, <code>maxReleaseYear</code>,
+ * <code>minPages</code>, <code>maxPages</code> - inclusive range filters</li>
+ * <li><code>sort</code> - a field to sort on, prefixed with <code>-</code> for
+ * a descending order, e.g. <code>sort=-releaseYear</code></li>
+ * </ul>
+ * <p>
+ * Filtering and sorting are done by the Datastore, so only the requested page
+ * is read. The Datastore limits which queries it can run: range filters may
+ * only be on one field, and results are sorted on that field first. Every
+ * combination of equality filters (language, author or both) with a sort
+ * order in either direction needs a composite index, see
+ * WEB-INF/datastore-indexes.xml. Without a sort the most recently created or
+ * updated Books come first.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BookQuery {
+
+	/** JSON field names a list can be sorted on and their Entity Properties. */
+	private static final Map<String, String> SORT_PROPERTIES = new LinkedHashMap<>();
+
+	static {
+		SORT_PROPERTIES.put("author", "Author");
+		SORT_PROPERTIES.put("title", "Title");
+		SORT_PROPERTIES.put("language", "Language");
+		SORT_PROPERTIES.put("pages", "Pages");
+		SORT_PROPERTIES.put("releaseYear", "ReleaseYear");
+	}
+
+	private static final String[] PARAMETERS = { "language", "author", "minReleaseYear", "maxReleaseYear",
+			"minPages", "maxPages", "sort" };
+
+	private final List<Filter> filters = new ArrayList<>();
+	private String rangeProperty;
+	private String sortProperty = "CreatedOrUpdated";
+	private SortDirection sortDirection = SortDirection.DESCENDING;
+	private String error;
+
+	private BookQuery() {
+	}
+
+	/**
+	 * @param request
+	 * @return boolean - true if the request has any filter or sort parameter
+	 */
+	public static boolean isQueryRequest(HttpServletRequest request) {
+		if (request.getQueryString() == null) {
+			return false;
+		}
+		for (String parameter : PARAMETERS) {
+			if (request.getParameter(parameter) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * <p>
+	 * Reads the filters and sort order from the query parameters. A request
+	 * without any of them lists all the Books, the most recent first.
+	 * </p>
+	 *
+	 * @param request
+	 * @return BookQuery - check {@link #getError()} before using it
+	 */
+	public static BookQuery fromRequest(HttpServletRequest request) {
+		BookQuery bookQuery = new BookQuery();
+		if (request.getQueryString() == null) {
+			return bookQuery;
+		}
+		bookQuery.addEqualityFilter("Language", request.getParameter("language"));
+		bookQuery.addEqualityFilter("Author", request.getParameter("author"));
+		bookQuery.addRangeFilter("ReleaseYear", "minReleaseYear", request.getParameter("minReleaseYear"),
+				FilterOperator.GREATER_THAN_OR_EQUAL);
+		bookQuery.addRangeFilter("ReleaseYear", "maxReleaseYear", request.getParameter("maxReleaseYear"),
+				FilterOperator.LESS_THAN_OR_EQUAL);
+		bookQuery.addRangeFilter("Pages", "minPages", request.getParameter("minPages"),
+				FilterOperator.GREATER_THAN_OR_EQUAL);
+		bookQuery.addRangeFilter("Pages", "maxPages", request.getParameter("maxPages"),
+				FilterOperator.LESS_THAN_OR_EQUAL);
+		bookQuery.setSort(request.getParameter("sort"));
+		return bookQuery;
+	}
+
+	private void addEqualityFilter(String property, String value) {
+		if (value != null) {
+			filters.add(new FilterPredicate(property, FilterOperator.EQUAL, value));
+		}
+	}
+
+	private void addRangeFilter(String property, String parameter, String value, FilterOperator operator) {
+		if (value == null || error != null) {
+			return;
+		}
+		long bound;
+		try {
+			bound = Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			error = parameter + " should be a whole number";
+			return;
+		}
+		if (rangeProperty != null && rangeProperty.equals(property) == false) {
+			error = "Only one of releaseYear and pages can be filtered on a range at a time";
+			return;
+		}
+		rangeProperty = property;
+		filters.add(new FilterPredicate(property, operator, bound));
+	}
+
+	private void setSort(String sort) {
+		if (error != null) {
+			return;
+		}
+		if (sort == null) {
+			if (rangeProperty != null) {
+				// The Datastore sorts on the range filtered Property first anyway
+				sortProperty = rangeProperty;
+				sortDirection = SortDirection.ASCENDING;
+			}
+			return;
+		}
+		boolean descending = sort.startsWith("-");
+		String field = descending ? sort.substring(1) : sort;
+		if (SORT_PROPERTIES.containsKey(field) == false) {
+			error = "sort should be one of " + String.join(",", SORT_PROPERTIES.keySet())
+					+ ", prefixed with - for a descending order";
+			return;
+		}
+		sortProperty = SORT_PROPERTIES.get(field);
+		sortDirection = descending ? SortDirection.DESCENDING : SortDirection.ASCENDING;
+		if (rangeProperty != null && rangeProperty.equals(sortProperty) == false) {
+			error = "A list filtered on a range of " + field(rangeProperty) + " can only be sorted on "
+					+ field(rangeProperty);
+		}
+	}
+
+	private static String field(String property) {
+		for (Map.Entry<String, String> entry : SORT_PROPERTIES.entrySet()) {
+			if (entry.getValue().equals(property)) {
+				return entry.getKey();
+			}
+		}
+		return property;
+	}
+
+	/**
+	 * @return String - why the parameters can't be turned into a query, null if
+	 *         they can
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * <p>
+	 * Builds the Datastore query on the Books kind. A new Query is built on every
+	 * call, so a query can be retried without the changes made to a previous one.
+	 * </p>
+	 *
+	 * @return Query
+	 */
+	public Query toQuery() {
+		Query query = new Query("Books");
+		if (filters.size() == 1) {
+			query.setFilter(filters.get(0));
+		} else if (filters.size() > 1) {
+			query.setFilter(CompositeFilterOperator.and(filters));
+		}
+		return query.addSort(sortProperty, sortDirection);
+	}
+}
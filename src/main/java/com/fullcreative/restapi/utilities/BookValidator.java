@@ -0,0 +1,227 @@
+package com.fullcreative.restapi.utilities;
+
+import java.time.Year;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Function;
+
+import com.fullcreative.restapi.models.Book;
+
+/**
+ * <p>
+ * Validates the details of a {@link Book} sent in a HttpServletRequest.
+ * </p>
+ * <p>
+ * The rules for every field are declared once in {@link #RULES}. Text fields
+ * are checked in a single pass over their characters without creating
+ * intermediate Strings, and every error found is reported in one
+ * {@link Result}.
+ * </p>
+ * <p>
+ * Use {@link #CREATE} when creating a book, where every field is required, and
+ * {@link #UPDATE} when updating one, where missing fields are left unchanged.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BookValidator {
+
+	/** Validator for new books. Every field is required. */
+	public static final BookValidator CREATE = new BookValidator(true);
+
+	/** Validator for book updates. Only the fields that are sent are checked. */
+	public static final BookValidator UPDATE = new BookValidator(false);
+
+	private static final int MINIMUM_PAGES = 20;
+
+	/** Characters accepted in a text field besides spaces. */
+	private enum Alphabet {
+		ANY, LETTERS, LETTERS_AND_DOTS
+	}
+
+	private static final List<Rule> RULES = Arrays.asList(
+			new TextRule(Book::getAuthor, Alphabet.LETTERS_AND_DOTS, "AUTHOR_NAME_EMPTY_ERROR",
+					"Author Name should contain atleast 1 character", "AUTHOR_NAME_FORMAT_ERROR",
+					"Author Name should contain only alphabets"),
+			new TextRule(Book::getTitle, Alphabet.ANY, "TITLE_NAME_ERROR",
+					"Title Name should contain atleast 1 character", null, null),
+			new TextRule(Book::getLanguage, Alphabet.LETTERS, "LANGUAGE_EMPTY_ERROR",
+					"Language field can't be empty", "LANGUAGE_FORMAT_ERROR",
+					"Language field can contain only alphabets"),
+			new PagesRule(), new ReleaseYearRule());
+
+	private final boolean fieldsRequired;
+
+	private BookValidator(boolean fieldsRequired) {
+		this.fieldsRequired = fieldsRequired;
+	}
+
+	/**
+	 * <p>
+	 * Checks every rule against the Book.
+	 * </p>
+	 *
+	 * @param book
+	 * @return Result
+	 */
+	public Result validate(Book book) {
+		Result result = new Result();
+		RequestTimer.Scope validate = RequestTimer.begin(RequestTimer.Phase.VALIDATE);
+		try {
+			for (Rule rule : RULES) {
+				rule.check(book, fieldsRequired, result);
+			}
+		} finally {
+			validate.close();
+		}
+		return result;
+	}
+
+	/**
+	 * The errors found while validating a Book, keyed by error code in the order
+	 * they were found.
+	 */
+	public static class Result {
+		private final LinkedHashMap<String, Object> errors = new LinkedHashMap<>();
+
+		private void addError(String errorCode, String message) {
+			errors.put(errorCode, message);
+		}
+
+		public boolean isValid() {
+			return errors.isEmpty();
+		}
+
+		public LinkedHashMap<String, Object> getErrors() {
+			return errors;
+		}
+
+		/**
+		 * <p>
+		 * Adds the errors and a 400 STATUS_CODE to the Response Map when the Book is
+		 * invalid.
+		 * </p>
+		 *
+		 * @param responseMap
+		 * @return LinkedHashMap<String, Object>
+		 */
+		public LinkedHashMap<String, Object> addTo(LinkedHashMap<String, Object> responseMap) {
+			if (isValid() == false) {
+				responseMap.putAll(errors);
+				responseMap.put("STATUS_CODE", 400);
+			}
+			return responseMap;
+		}
+	}
+
+	/** Validation Rules **/
+
+	private interface Rule {
+		void check(Book book, boolean required, Result result);
+	}
+
+	/**
+	 * Text field that must contain at least one character other than a space and
+	 * may be restricted to an Alphabet. Spaces are ignored by both checks.
+	 */
+	private static class TextRule implements Rule {
+		private final Function<Book, String> field;
+		private final Alphabet alphabet;
+		private final String emptyErrorCode;
+		private final String emptyErrorMessage;
+		private final String formatErrorCode;
+		private final String formatErrorMessage;
+
+		private TextRule(Function<Book, String> field, Alphabet alphabet, String emptyErrorCode,
+				String emptyErrorMessage, String formatErrorCode, String formatErrorMessage) {
+			this.field = field;
+			this.alphabet = alphabet;
+			this.emptyErrorCode = emptyErrorCode;
+			this.emptyErrorMessage = emptyErrorMessage;
+			this.formatErrorCode = formatErrorCode;
+			this.formatErrorMessage = formatErrorMessage;
+		}
+
+		@Override
+		public void check(Book book, boolean required, Result result) {
+			String value = field.apply(book);
+			if (value == null) {
+				if (required) {
+					result.addError(emptyErrorCode, emptyErrorMessage);
+				}
+				return;
+			}
+			boolean hasCharacters = false;
+			boolean wellFormed = true;
+			for (int i = 0; i < value.length(); i++) {
+				char character = value.charAt(i);
+				if (character == ' ') {
+					continue;
+				}
+				hasCharacters = true;
+				if (wellFormed && isInAlphabet(character) == false) {
+					wellFormed = false;
+				}
+			}
+			if (hasCharacters == false) {
+				result.addError(emptyErrorCode, emptyErrorMessage);
+			} else if (wellFormed == false) {
+				result.addError(formatErrorCode, formatErrorMessage);
+			}
+		}
+
+		private boolean isInAlphabet(char character) {
+			switch (alphabet) {
+			case LETTERS:
+				return isLetter(character);
+			case LETTERS_AND_DOTS:
+				return isLetter(character) || character == '.';
+			default:
+				return true;
+			}
+		}
+
+		private static boolean isLetter(char character) {
+			return (character >= 'a' && character <= 'z') || (character >= 'A' && character <= 'Z');
+		}
+	}
+
+	private static class PagesRule implements Rule {
+		@Override
+		public void check(Book book, boolean required, Result result) {
+			Integer pages = book.getPages();
+			if (pages == null) {
+				if (required) {
+					result.addError("PAGES_ERROR", "Page Count is required");
+				}
+			} else if (pages < 0) {
+				result.addError("PAGES_ERROR", "Page Count should be Positive");
+			} else if (pages < MINIMUM_PAGES) {
+				result.addError("PAGES_ERROR", "Book should have atleast " + MINIMUM_PAGES + " pages");
+			}
+		}
+	}
+
+	private static class ReleaseYearRule implements Rule {
+		@Override
+		public void check(Book book, boolean required, Result result) {
+			Integer releaseYear = book.getReleaseYear();
+			if (releaseYear == null) {
+				if (required) {
+					result.addError("YEAR_EMPTY_ERROR", "Release Year is required");
+				}
+				return;
+			}
+			if (releaseYear <= 0) {
+				result.addError("YEAR_NEGATIVE_VALUE_ERROR", "Year should be positive");
+			}
+			int currentYear = Year.now().getValue();
+			if (releaseYear > currentYear) {
+				result.addError("YEAR_FUTURE_VALUE_ERROR",
+						"Year should be less than or equal to the current year -> '" + currentYear + "'");
+			}
+		}
+	}
+}
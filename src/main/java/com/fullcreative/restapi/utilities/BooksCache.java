@@ -0,0 +1,213 @@
+package com.fullcreative.restapi.utilities;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+
+/**
+ * <p>
+ * Per instance read-through cache of Book Entities, keyed by the book ID.
+ * </p>
+ * <p>
+ * The cache holds at most {@link #MAXIMUM_SIZE} books and evicts the least
+ * recently used one when it is full. Found books expire after
+ * {@link #TIME_TO_LIVE_MILLIS} and unknown IDs are remembered for
+ * {@link #NOT_FOUND_TIME_TO_LIVE_MILLIS}. Writes must call
+ * {@link #invalidate(String)} for the books they change.
+ * </p>
+ * <p>
+ * Cached Entities are shared between requests and must not be modified.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BooksCache {
+
+	private static final int MAXIMUM_SIZE = 1000;
+	private static final long TIME_TO_LIVE_MILLIS = 60 * 1000;
+	private static final long NOT_FOUND_TIME_TO_LIVE_MILLIS = 5 * 1000;
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Incremented on every invalidation. A book loaded from the Datastore is only
+	 * cached when no invalidation happened while it was being loaded, so a slow
+	 * read can't put back a book that was just updated or deleted.
+	 */
+	private static final AtomicLong invalidations = new AtomicLong();
+
+	private static final LinkedHashMap<String, CachedBook> cache = new LinkedHashMap<String, CachedBook>(16, 0.75f,
+			true) {
+		private static final long serialVersionUID = 2437981364401952167L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedBook> eldest) {
+			if (size() > MAXIMUM_SIZE) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * A cached lookup result. A null entity marks an ID that is not in the
+	 * Datastore.
+	 */
+	private static class CachedBook {
+		private final Entity entity;
+		private final long expiresAt;
+
+		private CachedBook(Entity entity, long expiresAt) {
+			this.entity = entity;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Serves the Book Entity for the ID from the cache, reading it from the
+	 * Datastore when it isn't cached or has expired.
+	 * </p>
+	 *
+	 * @param bookID
+	 * @return Entity
+	 * @throws EntityNotFoundException - if there is no Book with the ID
+	 */
+	public static Entity get(String bookID) throws EntityNotFoundException {
+		long now = System.currentTimeMillis();
+		CachedBook cachedBook;
+		synchronized (cache) {
+			cachedBook = cache.get(bookID);
+			if (cachedBook != null && cachedBook.expiresAt <= now) {
+				cache.remove(bookID);
+				cachedBook = null;
+			}
+		}
+		if (cachedBook != null) {
+			hits.incrementAndGet();
+			if (cachedBook.entity == null) {
+				throw new EntityNotFoundException(KeyFactory.createKey("Books", bookID));
+			}
+			return cachedBook.entity;
+		}
+		misses.incrementAndGet();
+		long invalidationsBeforeLoad = invalidations.get();
+		DatastoreService datastore = BooksDatastore.getDatastoreService();
+		try {
+			Entity entity = datastore.get(KeyFactory.createKey("Books", bookID));
+			cacheLoadedBook(bookID, new CachedBook(entity, now + TIME_TO_LIVE_MILLIS), invalidationsBeforeLoad);
+			return entity;
+		} catch (EntityNotFoundException e) {
+			cacheLoadedBook(bookID, new CachedBook(null, now + NOT_FOUND_TIME_TO_LIVE_MILLIS),
+					invalidationsBeforeLoad);
+			throw e;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Serves the Book Entities for many IDs. Cached IDs are served from the cache
+	 * and all the others are read from the Datastore with a single multi-key get.
+	 * </p>
+	 *
+	 * @param bookIDs
+	 * @return Map<String, Entity> - the Books that were found, keyed by ID in the
+	 *         order of bookIDs
+	 */
+	public static Map<String, Entity> getAll(List<String> bookIDs) {
+		long now = System.currentTimeMillis();
+		Map<String, Entity> books = new LinkedHashMap<>();
+		List<Key> keysToLoad = new ArrayList<>();
+		synchronized (cache) {
+			for (String bookID : bookIDs) {
+				CachedBook cachedBook = cache.get(bookID);
+				if (cachedBook != null && cachedBook.expiresAt <= now) {
+					cache.remove(bookID);
+					cachedBook = null;
+				}
+				if (cachedBook == null) {
+					keysToLoad.add(KeyFactory.createKey("Books", bookID));
+					// Keeps the position of the ID, filled in once loaded
+					books.put(bookID, null);
+				} else if (cachedBook.entity != null) {
+					books.put(bookID, cachedBook.entity);
+				}
+			}
+		}
+		hits.addAndGet(bookIDs.size() - keysToLoad.size());
+		if (keysToLoad.isEmpty() == false) {
+			misses.addAndGet(keysToLoad.size());
+			long invalidationsBeforeLoad = invalidations.get();
+			DatastoreService datastore = BooksDatastore.getDatastoreService();
+			Map<Key, Entity> loadedBooks = datastore.get(keysToLoad);
+			for (Key key : keysToLoad) {
+				Entity entity = loadedBooks.get(key);
+				if (entity == null) {
+					books.remove(key.getName());
+					cacheLoadedBook(key.getName(), new CachedBook(null, now + NOT_FOUND_TIME_TO_LIVE_MILLIS),
+							invalidationsBeforeLoad);
+				} else {
+					books.put(key.getName(), entity);
+					cacheLoadedBook(key.getName(), new CachedBook(entity, now + TIME_TO_LIVE_MILLIS),
+							invalidationsBeforeLoad);
+				}
+			}
+		}
+		return books;
+	}
+
+	/**
+	 * <p>
+	 * Removes the Book from the cache. Call this whenever the Book is created,
+	 * updated or deleted.
+	 * </p>
+	 *
+	 * @param bookID
+	 */
+	public static void invalidate(String bookID) {
+		synchronized (cache) {
+			invalidations.incrementAndGet();
+			cache.remove(bookID);
+		}
+	}
+
+	private static void cacheLoadedBook(String bookID, CachedBook cachedBook, long invalidationsBeforeLoad) {
+		synchronized (cache) {
+			if (invalidations.get() == invalidationsBeforeLoad) {
+				cache.put(bookID, cachedBook);
+			}
+		}
+	}
+
+	/** Statistics **/
+
+	public static long getHitCount() {
+		return hits.get();
+	}
+
+	public static long getMissCount() {
+		return misses.get();
+	}
+
+	public static long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public static int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package com.fullcreative.restapi.utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+
+/**
+ * <p>
+ * Incremental feed of the changes made to the Books, served at
+ * <code>GET /books/_changes</code>, for services that keep a copy of the
+ * catalogue in sync without downloading all of it.
+ * </p>
+ * <p>
+ * Creates and updates are read from the CreatedOrUpdated Property of the Books.
+ * Deletes leave a tombstone Entity of the {@link #TOMBSTONE_KIND} kind, keyed
+ * by the ID of the deleted Book. Both are read with range queries on their
+ * time Property and merged in time order, so a sync reads about as many
+ * Entities as there are changes to return.
+ * </p>
+ * <p>
+ * Changes are served up to <code>books.changes.settleMillis</code> (5000 by
+ * default) before the current time. The time of a write is taken before it is
+ * committed and queries are eventually consistent, so the most recent changes
+ * could otherwise show up in the feed after a client had already read past
+ * them.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BooksChangeFeed {
+
+	/** Kind of the Entities recording deleted Books. */
+	public static final String TOMBSTONE_KIND = "BookTombstones";
+
+	private static final long SETTLE_MILLIS = Long.getLong("books.changes.settleMillis", 5000);
+
+	/** Rank of the kinds of change, for changes made at the same time. */
+	private static final int UPSERT = 0;
+	private static final int DELETE = 1;
+
+	private BooksChangeFeed() {
+	}
+
+	/**
+	 * <p>
+	 * Creates the tombstone recording the deletion of a Book, to be written
+	 * along with the delete.
+	 * </p>
+	 *
+	 * @param bookEntity - the Book Entity being deleted
+	 * @return Entity
+	 */
+	public static Entity tombstoneFor(Entity bookEntity) {
+		Entity tombstone = new Entity(TOMBSTONE_KIND, bookEntity.getKey().getName());
+		tombstone.setProperty("Deleted", new Date());
+		tombstone.setUnindexedProperty("Version", BooksControllerUtilities.versionFromEntity(bookEntity));
+		return tombstone;
+	}
+
+	/**
+	 * <p>
+	 * Reads the position to read the changes from, either a
+	 * <code>nextCursor</code> returned by a previous call, or a
+	 * <code>since</code> time to get the changes made after, as milliseconds
+	 * since the epoch or an ISO-8601 instant like
+	 * <code>2023-05-01T10:15:30Z</code>.
+	 * </p>
+	 *
+	 * @param since
+	 * @param cursor
+	 * @return Position - the last change already served
+	 * @throws IllegalArgumentException - if neither is valid
+	 */
+	private static Position positionFrom(String since, String cursor) throws IllegalArgumentException {
+		if (cursor != null) {
+			String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			String[] parts = decoded.split(":", 3);
+			if (parts.length != 3) {
+				throw new IllegalArgumentException("Invalid cursor");
+			}
+			return new Position(Long.parseLong(parts[0]), parts[2].isEmpty() ? null : parts[2],
+					Integer.parseInt(parts[1]));
+		}
+		if (since == null) {
+			throw new IllegalArgumentException("since or cursor is required");
+		}
+		long sinceMillis;
+		try {
+			sinceMillis = Long.parseLong(since.trim());
+		} catch (NumberFormatException e) {
+			try {
+				sinceMillis = Instant.parse(since.trim()).toEpochMilli();
+			} catch (DateTimeParseException parseException) {
+				throw new IllegalArgumentException("Invalid since");
+			}
+		}
+		// Everything made at the since time itself was already seen
+		return new Position(sinceMillis, null, DELETE);
+	}
+
+	/**
+	 * <p>
+	 * Serves the changes made after a position in time order, at most
+	 * <code>limit</code> of them. Every change has the <code>id</code> of the
+	 * Book, <code>change</code> set to upsert or delete, the time it was
+	 * <code>changed</code> and the <code>book</code> for upserts.
+	 * </p>
+	 * <p>
+	 * <code>nextCursor</code> is always returned, even when there were no
+	 * changes, so that the client can keep asking for the changes made since its
+	 * last call. <code>hasMore</code> tells if more changes are already waiting.
+	 * </p>
+	 *
+	 * @param since  - see {@link #positionFrom(String, String)}
+	 * @param cursor - see {@link #positionFrom(String, String)}
+	 * @param limit
+	 * @param fields - the fields served for every Book
+	 * @return LinkedHashMap<String, Object>
+	 * @throws IllegalArgumentException - if neither since nor cursor is valid
+	 */
+	public static LinkedHashMap<String, Object> getChanges(String since, String cursor, int limit, BookFields fields)
+			throws IllegalArgumentException {
+		Position position = positionFrom(since, cursor);
+		long untilMillis = System.currentTimeMillis() - SETTLE_MILLIS;
+		FetchOptions fetchOptions = FetchOptions.Builder.withChunkSize(limit + 1).prefetchSize(limit + 1);
+		DatastoreService datastore = BooksDatastore.getDatastoreService();
+		// Both queries are sent before either is read, so they run concurrently
+		Iterator<Entity> upsertEntities = datastore
+				.prepare(changesQuery("Books", "CreatedOrUpdated", position, untilMillis)).asIterator(fetchOptions);
+		Iterator<Entity> deleteEntities = datastore
+				.prepare(changesQuery(TOMBSTONE_KIND, "Deleted", position, untilMillis)).asIterator(fetchOptions);
+		ChangeIterator upserts = new ChangeIterator(upsertEntities, "CreatedOrUpdated", UPSERT);
+		ChangeIterator deletes = new ChangeIterator(deleteEntities, "Deleted", DELETE);
+
+		List<LinkedHashMap<String, Object>> changes = new ArrayList<>();
+		while (changes.size() < limit) {
+			ChangeIterator next = upserts.peek() == null ? deletes
+					: deletes.peek() == null ? upserts
+							: upserts.peekPosition().compareTo(deletes.peekPosition()) <= 0 ? upserts : deletes;
+			Entity entity = next.peek();
+			if (entity == null) {
+				break;
+			}
+			Position changePosition = next.peekPosition();
+			next.skip();
+			if (changePosition.compareTo(position) <= 0) {
+				// Changed at the same time as the last change served before
+				continue;
+			}
+			changes.add(change(entity, changePosition, fields));
+			position = changePosition;
+		}
+
+		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
+		responseMap.put("changes", changes);
+		responseMap.put("nextCursor", position.toCursor());
+		responseMap.put("hasMore", upserts.peek() != null || deletes.peek() != null);
+		responseMap.put("STATUS_CODE", 200);
+		return responseMap;
+	}
+
+	private static Query changesQuery(String kind, String timeProperty, Position position, long untilMillis) {
+		// Changes at the time of the position may not all have been served yet
+		return new Query(kind)
+				.setFilter(CompositeFilterOperator.and(
+						new FilterPredicate(timeProperty, FilterOperator.GREATER_THAN_OR_EQUAL,
+								new Date(position.millis)),
+						new FilterPredicate(timeProperty, FilterOperator.LESS_THAN, new Date(untilMillis))))
+				.addSort(timeProperty, SortDirection.ASCENDING);
+	}
+
+	private static LinkedHashMap<String, Object> change(Entity entity, Position position, BookFields fields) {
+		LinkedHashMap<String, Object> change = new LinkedHashMap<>();
+		change.put("id", position.id);
+		change.put("change", position.rank == UPSERT ? "upsert" : "delete");
+		change.put("changed", Instant.ofEpochMilli(position.millis).toString());
+		if (position.rank == UPSERT) {
+			change.put("book", BooksControllerUtilities.bookFromEntity(entity, fields));
+		}
+		return change;
+	}
+
+	/**
+	 * Place of a change in the feed. Changes are ordered by time, then by Book
+	 * ID, as the Datastore orders Entities with the same time by Key, then
+	 * upserts before deletes.
+	 */
+	private static class Position implements Comparable<Position> {
+		private final long millis;
+		/** Null for every change made at that time. */
+		private final String id;
+		private final int rank;
+
+		private Position(long millis, String id, int rank) {
+			this.millis = millis;
+			this.id = id;
+			this.rank = rank;
+		}
+
+		@Override
+		public int compareTo(Position other) {
+			if (millis != other.millis) {
+				return Long.compare(millis, other.millis);
+			}
+			if (id == null || other.id == null) {
+				return id == other.id ? 0 : id == null ? 1 : -1;
+			}
+			int byID = id.compareTo(other.id);
+			return byID != 0 ? byID : Integer.compare(rank, other.rank);
+		}
+
+		private String toCursor() {
+			String position = millis + ":" + rank + ":" + (id == null ? "" : id);
+			return Base64.getUrlEncoder().withoutPadding()
+					.encodeToString(position.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/** Iterator over the changes of one kind that can look one change ahead. */
+	private static class ChangeIterator {
+		private final Iterator<Entity> entities;
+		private final String timeProperty;
+		private final int rank;
+		private Entity next;
+
+		private ChangeIterator(Iterator<Entity> entities, String timeProperty, int rank) {
+			this.entities = entities;
+			this.timeProperty = timeProperty;
+			this.rank = rank;
+			skip();
+		}
+
+		private Entity peek() {
+			return next;
+		}
+
+		private Position peekPosition() {
+			return new Position(((Date) next.getProperty(timeProperty)).getTime(), next.getKey().getName(), rank);
+		}
+
+		private void skip() {
+			next = entities.hasNext() ? entities.next() : null;
+		}
+	}
+}
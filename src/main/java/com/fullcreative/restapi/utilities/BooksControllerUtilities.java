@@ -1,36 +1,65 @@
 package com.fullcreative.restapi.utilities;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Time;
 import java.time.Instant;
-import java.time.Year;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.fullcreative.restapi.models.Book;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.DatastoreNeedIndexException;
 import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.DatastoreTimeoutException;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.SortDirection;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.apphosting.api.ApiProxy;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 
 /**
  * @author Sriram
@@ -38,24 +67,67 @@ import com.google.gson.JsonSyntaxException;
  */
 public class BooksControllerUtilities {
 
+	private static final Logger logger = BooksLog.getLogger(BooksControllerUtilities.class);
+
+	/**
+	 * Number of Book Entities fetched from the Datastore per batch while
+	 * streaming the list of all books.
+	 */
+	private static final int STREAMING_CHUNK_SIZE = 100;
+
+	/** Number of Books served in a page when the client does not send a limit. */
+	private static final int DEFAULT_PAGE_SIZE = 15;
+
+	/** Maximum number of Books the server will serve in a single page. */
+	private static final int MAX_PAGE_SIZE = 100;
+
+	/** Content type of every JSON response, always encoded in UTF-8. */
+	private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+
+	/**
+	 * Largest request body accepted for a single Book or a batch lookup. Set with
+	 * the <code>books.maxRequestBodyBytes</code> system property.
+	 */
+	public static final long MAX_REQUEST_BODY_BYTES = Long.getLong("books.maxRequestBodyBytes", 64 * 1024);
+
+	/**
+	 * Largest request body accepted for a bulk request. Set with the
+	 * <code>books.maxBulkRequestBodyBytes</code> system property.
+	 */
+	public static final long MAX_BULK_REQUEST_BODY_BYTES = Long.getLong("books.maxBulkRequestBodyBytes",
+			4 * 1024 * 1024);
+
+	/** Content-Encodings that get their own strong ETags, see {@link #eTagForEncoding(String, String)}. */
+	private static final String[] CONTENT_ENCODINGS = { "gzip", "deflate" };
+
+	/** Maximum number of IDs accepted in a single batch lookup. */
+	private static final int MAX_LOOKUP_IDS = 1000;
+
+	/** Maximum number of operations accepted in a single bulk request. */
+	private static final int MAX_BULK_OPERATIONS = 5000;
+
+	/** Maximum number of bulk updates and deletes whose transactions run at once. */
+	private static final int BULK_TRANSACTION_WAVE_SIZE = 100;
+
+	/** Maximum number of Entities written by a single batched Datastore put or delete. */
+	private static final int BULK_WRITE_BATCH_SIZE = 500;
+
 	/** Utility Methods for HttpServletRequest Processing and Validation **/
 
 	/**
 	 * <p>
 	 * Checks if the HttpServletRequest URI has a ID or not.
 	 * </p>
+	 * <p>
+	 * Controllers should parse the {@link BooksRoute} once per request instead.
+	 * </p>
 	 * 
 	 * @param requestURI
 	 * @return boolean
 	 */
 	public static boolean hasBookID(String requestURI) {
-		List<String> requestsArray = Arrays.asList(requestURI.split("/"));
-		Integer count = requestsArray.size();
-		if (count == 3) {
-			return true;
-		} else {
-			return false;
-		}
+		BooksRoute route = BooksRoute.fromRequestURI(requestURI);
+		return route.hasBookID() && route.hasSubResource() == false;
 	}
 
 	/**
@@ -69,13 +141,8 @@ public class BooksControllerUtilities {
 	 * @return boolean
 	 */
 	public static boolean isValidEndPoint(String requestURI) {
-		List<String> requestsArray = Arrays.asList(requestURI.split("/"));
-		Integer count = requestsArray.size();
-		if (count == 3 || count == 2) {
-			return true;
-		} else {
-			return false;
-		}
+		BooksRoute route = BooksRoute.fromRequestURI(requestURI);
+		return route.isValid() && route.hasSubResource() == false;
 	}
 
 	/**
@@ -87,29 +154,110 @@ public class BooksControllerUtilities {
 	 * @return String
 	 */
 	public static String getBookIDFromUri(HttpServletRequest request) {
-		String requestUri = request.getRequestURI();
-		String[] requestsArray = requestUri.split("/");
-		String bookID = requestsArray[requestsArray.length - 1];
-		return bookID;
+		return BooksRoute.fromRequest(request).getBookID();
 	}
 
 	/**
 	 * <p>
-	 * Extracts the JSON Payload from the HttpServletRequest
+	 * Parses the JSON Payload of the HttpServletRequest into a Book, reading
+	 * straight from the request InputStream.
+	 * </p>
+	 * <p>
+	 * The body can't be larger than {@link #MAX_REQUEST_BODY_BYTES}. A body
+	 * without any Book field, such as an empty body or <code>{}</code>, is
+	 * treated as an empty request.
 	 * </p>
 	 * 
 	 * @param request
-	 * @return String
+	 * @return Book
+	 * @throws NullPointerException         - if the request body is empty
+	 * @throws RequestBodyTooLargeException - if the request body is too large
+	 * @throws JsonSyntaxException          - if the request body isn't a json Book
 	 * @throws IOException
 	 */
-	public static String payloadFromRequest(HttpServletRequest request) throws IOException {
-		StringBuffer jsonString = new StringBuffer();
-		String line = null;
-		BufferedReader reader = request.getReader();
-		while ((line = reader.readLine()) != null) {
-			jsonString.append(line);
+	public static Book bookFromRequest(HttpServletRequest request)
+			throws NullPointerException, RequestBodyTooLargeException, JsonSyntaxException, IOException {
+		Book book;
+		RequestTimer.Scope parse = RequestTimer.begin(RequestTimer.Phase.PARSE);
+		try {
+			JsonReader reader = jsonReaderFromRequest(request, MAX_REQUEST_BODY_BYTES);
+			book = BooksGson.BOOK_ADAPTER.read(reader);
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new JsonSyntaxException("Request body has content after the json object");
+			}
+		} catch (MalformedJsonException | EOFException e) {
+			throw new JsonSyntaxException(e);
+		} finally {
+			parse.close();
+		}
+		// Request is empty
+		if (book == null || (book.getId() == null && book.getAuthor() == null && book.getTitle() == null
+				&& book.getLanguage() == null && book.getPages() == null && book.getReleaseYear() == null)) {
+			throw new NullPointerException();
+		}
+		return book;
+	}
+
+	/**
+	 * <p>
+	 * Parses the JSON Payload of the HttpServletRequest, reading straight from the
+	 * request InputStream.
+	 * </p>
+	 * 
+	 * @param request
+	 * @param maximumBytes - the largest body accepted
+	 * @return JsonElement
+	 * @throws NullPointerException         - if the request body is empty
+	 * @throws RequestBodyTooLargeException - if the request body is too large
+	 * @throws JsonSyntaxException          - if the request body isn't json
+	 * @throws IOException
+	 */
+	public static JsonElement jsonFromRequest(HttpServletRequest request, long maximumBytes)
+			throws NullPointerException, RequestBodyTooLargeException, JsonSyntaxException, IOException {
+		RequestTimer.Scope parse = RequestTimer.begin(RequestTimer.Phase.PARSE);
+		try {
+			JsonReader reader = jsonReaderFromRequest(request, maximumBytes);
+			JsonElement json = BooksGson.GSON.getAdapter(JsonElement.class).read(reader);
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new JsonSyntaxException("Request body has content after the json value");
+			}
+			return json;
+		} catch (MalformedJsonException | EOFException e) {
+			throw new JsonSyntaxException(e);
+		} finally {
+			parse.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Opens a JsonReader over the request InputStream that fails once more than
+	 * maximumBytes are read. Requests that declare a larger Content-Length are
+	 * rejected before anything is read.
+	 * </p>
+	 * 
+	 * @param request
+	 * @param maximumBytes
+	 * @return JsonReader
+	 * @throws NullPointerException         - if the request body is empty
+	 * @throws RequestBodyTooLargeException - if the request body is too large
+	 * @throws IOException
+	 */
+	private static JsonReader jsonReaderFromRequest(HttpServletRequest request, long maximumBytes)
+			throws NullPointerException, RequestBodyTooLargeException, IOException {
+		if (request.getContentLengthLong() > maximumBytes) {
+			throw new RequestBodyTooLargeException(maximumBytes);
 		}
-		return jsonString.toString();
+		String encoding = request.getCharacterEncoding() != null ? request.getCharacterEncoding() : "UTF-8";
+		JsonReader reader = new JsonReader(new InputStreamReader(
+				new SizeLimitedInputStream(request.getInputStream(), maximumBytes), encoding));
+		try {
+			reader.peek();
+		} catch (EOFException e) {
+			// Request is empty
+			throw new NullPointerException();
+		}
+		return reader;
 	}
 
 	/**
@@ -130,6 +278,21 @@ public class BooksControllerUtilities {
 		return responseMap;
 	}
 
+	/**
+	 * <p>
+	 * Generates a Error Response Map for when the <code>fields</code> query
+	 * parameter names a field a Book doesn't have.
+	 * </p>
+	 * 
+	 * @param responseMap
+	 * @return Map<String, Object>
+	 */
+	public static Map<String, Object> invalidFieldsResponse(Map<String, Object> responseMap) {
+		responseMap.put("FIELDS_ERROR", "fields should be a comma separated list of " + BookFields.allFieldNames());
+		responseMap.put("STATUS_CODE", 400);
+		return responseMap;
+	}
+
 
 	/** Utility Methods to Manipulate Data Structures and Data Types **/
 
@@ -142,7 +305,6 @@ public class BooksControllerUtilities {
 	 * @return String
 	 */
 	public static String mapToJsonString(LinkedHashMap<String, Object> map) {
-		Gson gson = new Gson();
 		Book book = new Book();
 		book.setId((String) map.get("id"));
 		book.setAuthor((String) map.get("author"));
@@ -150,7 +312,7 @@ public class BooksControllerUtilities {
 		book.setLanguage((String) map.get("language"));
 		book.setPages((Integer) map.get("pages"));
 		book.setReleaseYear((Integer) map.get("releaseYear"));
-		String jsonString = gson.toJson(book);
+		String jsonString = BooksGson.GSON.toJson(book);
 		return jsonString;
 	}
 
@@ -163,9 +325,23 @@ public class BooksControllerUtilities {
 	 * @return List<Book>
 	 */
 	public static List<Book> booksFromEntities(List<Entity> entities) {
+		return booksFromEntities(entities, BookFields.ALL);
+	}
+
+	/**
+	 * <p>
+	 * Creates a List of Book POJOs holding only the requested fields from a List
+	 * of Entities.
+	 * </p>
+	 * 
+	 * @param entities
+	 * @param fields
+	 * @return List<Book>
+	 */
+	public static List<Book> booksFromEntities(List<Entity> entities, BookFields fields) {
 		List<Book> books = new ArrayList<>();
 		for (Entity entity : entities) {
-			books.add(bookFromEntity(entity));
+			books.add(bookFromEntity(entity, fields));
 		}
 
 		return books;
@@ -180,7 +356,7 @@ public class BooksControllerUtilities {
 	 * @param map
 	 * @return LinkedHashMap<String, Object>
 	 */
-	private static LinkedHashMap<String, Object> mapFromBook(Book book, LinkedHashMap<String, Object> map) {
+	public static LinkedHashMap<String, Object> mapFromBook(Book book, LinkedHashMap<String, Object> map) {
 		map.put("id", book.getId());
 		map.put("author", book.getAuthor());
 		map.put("title", book.getTitle());
@@ -198,7 +374,7 @@ public class BooksControllerUtilities {
 	 * @param entity
 	 * @return Book
 	 */
-	private static Book bookFromEntity(Entity entity) {
+	public static Book bookFromEntity(Entity entity) {
 		Book book = new Book();
 		book.setId(entity.getKey().getName());
 		book.setAuthor(entity.getProperty("Author").toString());
@@ -209,6 +385,41 @@ public class BooksControllerUtilities {
 		return book;
 	}
 
+	/**
+	 * <p>
+	 * Creates a Book POJO out of the Properties of the requested fields only. The
+	 * other fields are left null, so they are left out of the JSON. The Entity
+	 * may come from a projection query holding only those Properties.
+	 * </p>
+	 * 
+	 * @param entity
+	 * @param fields
+	 * @return Book
+	 */
+	public static Book bookFromEntity(Entity entity, BookFields fields) {
+		if (fields.isAll()) {
+			return bookFromEntity(entity);
+		}
+		Book book = new Book();
+		book.setId(entity.getKey().getName());
+		if (fields.includes("author")) {
+			book.setAuthor(entity.getProperty("Author").toString());
+		}
+		if (fields.includes("title")) {
+			book.setTitle(entity.getProperty("Title").toString());
+		}
+		if (fields.includes("language")) {
+			book.setLanguage(entity.getProperty("Language").toString());
+		}
+		if (fields.includes("pages")) {
+			book.setPages(Integer.parseInt(entity.getProperty("Pages").toString()));
+		}
+		if (fields.includes("releaseYear")) {
+			book.setReleaseYear(Integer.parseInt(entity.getProperty("ReleaseYear").toString()));
+		}
+		return book;
+	}
+
 	/**
 	 * <p>
 	 * Converts the Properties of Book POJO into an Datastore Entity.
@@ -229,6 +440,7 @@ public class BooksControllerUtilities {
 		entity.setProperty("Pages", book.getPages());
 		entity.setProperty("ReleaseYear", book.getReleaseYear());
 		entity.setProperty("CreatedOrUpdated", Time.from(Instant.now()));
+		entity.setProperty("Version", 1L);
 		return entity;
 	}
 
@@ -243,14 +455,11 @@ public class BooksControllerUtilities {
 	 * </p>
 	 * 
 	 * @param book
-	 * @param bookID
+	 * @param datastoreEntity - the Entity currently stored in the Datastore
 	 * @return Entity
-	 * @throws EntityNotFoundException
 	 */
-	private static Entity entityFromBookForUpdate(Book book, String bookID) throws EntityNotFoundException {
-		Entity entity = new Entity("Books", bookID);
-		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-		Entity datastoreEntity = datastore.get(entity.getKey());
+	private static Entity entityFromBookForUpdate(Book book, Entity datastoreEntity) {
+		Entity entity = new Entity(datastoreEntity.getKey());
 
 		if (book.getAuthor() != null) {
 			entity.setProperty("Author",
@@ -279,266 +488,771 @@ public class BooksControllerUtilities {
 			entity.setProperty("ReleaseYear", datastoreEntity.getProperty("ReleaseYear"));
 		}
 		entity.setProperty("CreatedOrUpdated", Time.from(Instant.now()));
+		entity.setProperty("Version", versionFromEntity(datastoreEntity) + 1);
 		return entity;
 	}
 
 	/**
-	 * Controller Methods
+	 * <p>
+	 * Reads the Version of a Book Entity. The Version starts at 1 when the Book is
+	 * created and is incremented by every update. Books stored before versioning
+	 * was introduced are at Version 0.
+	 * </p>
+	 * 
+	 * @param entity
+	 * @return long
 	 */
+	public static long versionFromEntity(Entity entity) {
+		Object version = entity.getProperty("Version");
+		if (version == null) {
+			return 0;
+		}
+		return ((Number) version).longValue();
+	}
+
 	/**
-	 * @param response
-	 * @param responseMap
-	 * @throws NumberFormatException
-	 * @throws IOException
+	 * <p>
+	 * Creates the strong ETag of a Book Entity from its Version.
+	 * </p>
+	 * 
+	 * @param entity
+	 * @return String
 	 */
-	public static void sendPrettyJsonResponse(HttpServletResponse response, Map<String, Object> responseMap)
-			throws NumberFormatException, IOException {
-		int code = Integer.parseInt(responseMap.remove("STATUS_CODE").toString());
-		String responseAsJson = new GsonBuilder().setPrettyPrinting().create().toJson(responseMap);
-		response.setContentType("application/json");
-		response.getWriter().println(responseAsJson);
-		response.setStatus(code);
+	public static String eTagFromEntity(Entity entity) {
+		return "\"" + versionFromEntity(entity) + "\"";
 	}
 
 	/**
-	 * @param response
-	 * @param responseMap
-	 * @throws NumberFormatException
-	 * @throws IOException
+	 * <p>
+	 * Checks the If-Match request header against the current ETag of a Book. A
+	 * missing header or <code>*</code> always matches, otherwise one of the listed
+	 * ETags has to be equal to the current one, in its plain or compressed form.
+	 * Weak ETags never match.
+	 * </p>
+	 * 
+	 * @param ifMatch - value of the If-Match header, may be null
+	 * @param eTag
+	 * @return boolean
 	 */
-	public static void sendJsonResponse(HttpServletResponse response, Map<String, Object> responseMap)
-			throws NumberFormatException, IOException {
-		int code = Integer.parseInt(responseMap.remove("STATUS_CODE").toString());
-		String responseAsJson = new GsonBuilder().setPrettyPrinting().create().toJson(responseMap);
-		response.setContentType("application/json");
-		response.getWriter().print(responseAsJson);
-		response.setStatus(code);
+	public static boolean ifMatchSatisfied(String ifMatch, String eTag) {
+		if (ifMatch == null || ifMatch.trim().equals("*")) {
+			return true;
+		}
+		for (String candidate : ifMatch.split(",")) {
+			if (eTagWithoutEncoding(candidate.trim()).equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
-	 * @param response
-	 * @param arrayOfBooks
-	 * @throws IOException
+	 * <p>
+	 * Creates the ETag of a response compressed with a Content-Encoding out of
+	 * the ETag of the plain one, e.g. <code>"3-gzip"</code> for
+	 * <code>"3"</code>. The compressed bytes differ from the plain ones, so they
+	 * can't share a strong ETag. Weak ETags are kept as they are.
+	 * </p>
+	 * 
+	 * @param eTag
+	 * @param contentEncoding - gzip or deflate
+	 * @return String
 	 */
-	public static void sendGetAllJsonResponse(HttpServletResponse response, LinkedList<String> arrayOfBooks)
-			throws IOException {
-		response.setContentType("application/json");
-		response.getWriter().println(arrayOfBooks);
-		response.setStatus(200);
+	public static String eTagForEncoding(String eTag, String contentEncoding) {
+		if (eTag.startsWith("W/") || eTag.endsWith("\"") == false || eTag.length() < 2) {
+			return eTag;
+		}
+		return eTag.substring(0, eTag.length() - 1) + "-" + contentEncoding + "\"";
 	}
 
 	/**
-	 * @param response
-	 * @param jsonData
-	 * @throws IOException
+	 * <p>
+	 * Undoes {@link #eTagForEncoding(String, String)}.
+	 * </p>
+	 * 
+	 * @param eTag
+	 * @return String - the ETag of the plain response
 	 */
-	public static void sendJsonResponse(HttpServletResponse response, String jsonData) throws IOException {
-		response.setContentType("application/json");
-		response.getWriter().println(jsonData);
-		response.setStatus(200);
+	public static String eTagWithoutEncoding(String eTag) {
+		for (String contentEncoding : CONTENT_ENCODINGS) {
+			String suffix = "-" + contentEncoding + "\"";
+			if (eTag.endsWith(suffix) && eTag.startsWith("W/") == false) {
+				return eTag.substring(0, eTag.length() - suffix.length()) + "\"";
+			}
+		}
+		return eTag;
 	}
 
 	/**
-	 * @param response
-	 * @param e
-	 * @throws IOException
+	 * <p>
+	 * Creates a strong ETag for a page of Book Entities out of the IDs and Versions
+	 * of the Books in the page and the Cursor to the next page.
+	 * </p>
+	 * 
+	 * @param entities
+	 * @param nextCursor - may be null
+	 * @return String
 	 */
-	public static void sendInternalServerErrorResponse(HttpServletResponse response, Exception e) throws IOException {
-		e.printStackTrace();
-		Map<String, String> internalServerErrorMap = new LinkedHashMap<String, String>();
-		response.setContentType("application/json");
-		internalServerErrorMap.put("500", "Something went wrong");
-		String internalServerError = new Gson().toJson(internalServerErrorMap);
-		response.getWriter().println(internalServerError);
-		response.setStatus(500);
+	public static String eTagFromEntities(List<Entity> entities, String nextCursor) {
+		return eTagFromEntities(entities, nextCursor, BookFields.ALL);
 	}
 
 	/**
-	 * @param response
-	 * @throws IOException
+	 * <p>
+	 * Creates a strong ETag for a page of Books holding only some fields. The
+	 * Entities may come from a projection query without the Version, so the
+	 * values of the served Properties stand in for it.
+	 * </p>
+	 * 
+	 * @param entities
+	 * @param nextCursor - may be null
+	 * @param fields
+	 * @return String
 	 */
-	public static void sendEmptyRequestErrorResponse(HttpServletResponse response) throws IOException {
-		Map<String, String> requestErrorMap = new LinkedHashMap<String, String>();
-		response.setContentType("application/json");
-		requestErrorMap.put("EMPTY_REQUEST_ERROR", "Request should contain json body");
-		String requestError = new Gson().toJson(requestErrorMap);
-		response.getWriter().println(requestError);
-		response.setStatus(400);
+	public static String eTagFromEntities(List<Entity> entities, String nextCursor, BookFields fields) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		for (Entity entity : entities) {
+			digest.update(entity.getKey().getName().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) ':');
+			if (fields.isAll()) {
+				digest.update(Long.toString(versionFromEntity(entity)).getBytes(StandardCharsets.UTF_8));
+			} else {
+				for (String property : fields.getProperties()) {
+					digest.update(String.valueOf(entity.getProperty(property)).getBytes(StandardCharsets.UTF_8));
+					digest.update((byte) ';');
+				}
+			}
+			digest.update((byte) ',');
+		}
+		if (nextCursor != null) {
+			digest.update(nextCursor.getBytes(StandardCharsets.UTF_8));
+		}
+		if (fields.isAll() == false) {
+			digest.update(fields.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()) + "\"";
 	}
 
 	/**
-	 * @param queryParameters
-	 * @return
-	 * @throws JsonSyntaxException
+	 * <p>
+	 * Reads the time the Book Entity was created or last updated.
+	 * </p>
+	 * 
+	 * @param entity
+	 * @return Date - null if the Entity doesn't have the property
 	 */
-	public static String processGetAllRequest() throws JsonSyntaxException {
-		LinkedHashMap<String, Object> results = new LinkedHashMap<String, Object>();
-		results = BooksControllerUtilities.getAllBooks();
-		String result = new Gson().newBuilder().setPrettyPrinting().create().toJson(results, LinkedHashMap.class)
-				.toString();
-		return result;
+	public static Date lastModifiedFromEntity(Entity entity) {
+		return (Date) entity.getProperty("CreatedOrUpdated");
 	}
 
 	/**
-	 * @param responseMap
-	 * @param jsonRequestString
-	 * @return
-	 * @throws NullPointerException
-	 * @throws EntityNotFoundException
+	 * <p>
+	 * Finds the most recent creation or update time among the Book Entities.
+	 * </p>
+	 * 
+	 * @param entities
+	 * @return Date - null if none of the Entities has the property
 	 */
-	public static Map<String, Object> processCreateRequest(Map<String, Object> responseMap, String jsonRequestString)
-			throws NullPointerException, EntityNotFoundException {
-		// Request is empty
-		if (jsonRequestString.length() == 0 || jsonRequestString.substring(1).replaceAll("}", "").length() == 0) {
-			throw new NullPointerException();
-		}
-		// Request has only book details to be updated
-		else if (jsonRequestString != null) {
-			System.out.println("Request Has JSON Body");
-			System.out.println("Request JSON Body: " + jsonRequestString);
-			responseMap = BooksControllerUtilities.createNewBook(jsonRequestString);
+	public static Date lastModifiedFromEntities(List<Entity> entities) {
+		Date lastModified = null;
+		for (Entity entity : entities) {
+			Date entityLastModified = lastModifiedFromEntity(entity);
+			if (entityLastModified != null && (lastModified == null || entityLastModified.after(lastModified))) {
+				lastModified = entityLastModified;
+			}
 		}
-		return responseMap;
+		return lastModified;
 	}
 
 	/**
+	 * <p>
+	 * Checks the If-None-Match and If-Modified-Since request headers against the
+	 * ETAG and LAST_MODIFIED of a successful Response Map. If-Modified-Since is
+	 * only used when the request has no If-None-Match header.
+	 * </p>
+	 * 
+	 * @param request
 	 * @param responseMap
-	 * @param bookID
-	 * @param jsonRequestString
-	 * @return
-	 * @throws NullPointerException
-	 * @throws EntityNotFoundException
+	 * @return boolean - true if the client's copy is still current
 	 */
-	public static Map<String, Object> processUpdateRequest(Map<String, Object> responseMap, String bookID,
-			String jsonRequestString) throws NullPointerException, EntityNotFoundException {
-		// Request is empty
-		if (jsonRequestString.length() == 0 || jsonRequestString.substring(1).replaceAll("}", "").length() == 0) {
-			throw new NullPointerException();
+	public static boolean isNotModified(HttpServletRequest request, Map<String, Object> responseMap) {
+		if (Integer.parseInt(responseMap.get("STATUS_CODE").toString()) != 200) {
+			return false;
 		}
-		// Request has only book details to be updated
-		else {
-			System.out.println("Request Has JSON Body");
-			System.out.println("Request JSON Body: " + jsonRequestString);
-			responseMap = BooksControllerUtilities.updateBook(jsonRequestString, bookID);
+		Object eTag = responseMap.get("ETAG");
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			if (eTag == null) {
+				return false;
+			}
+			if (eTag.toString().startsWith("W/")) {
+				eTag = eTag.toString().substring(2);
+			}
+			for (String candidate : ifNoneMatch.split(",")) {
+				candidate = candidate.trim();
+				if (candidate.startsWith("W/")) {
+					candidate = candidate.substring(2);
+				}
+				if (candidate.equals("*") || eTagWithoutEncoding(candidate).equals(eTag)) {
+					return true;
+				}
+			}
+			return false;
 		}
-		return responseMap;
+		Date lastModified = (Date) responseMap.get("LAST_MODIFIED");
+		if (lastModified == null) {
+			return false;
+		}
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = request.getDateHeader("If-Modified-Since");
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		// HTTP dates have a precision of one second
+		return ifModifiedSince != -1 && lastModified.getTime() / 1000 <= ifModifiedSince / 1000;
 	}
 
 	/**
-	 * @param bookID
-	 * @return
+	 * <p>
+	 * Generates a Error Response Map for when the If-Match header of a request
+	 * doesn't match the current ETag of the Book.
+	 * </p>
+	 * 
+	 * @param responseMap
+	 * @param eTag
+	 * @return LinkedHashMap<String, Object>
 	 */
-	public static LinkedHashMap<String, Object> processGetOneBookRequest(String bookID) {
-		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
-		try {
-			responseMap = BooksControllerUtilities.getOneBook(bookID);
-			responseMap.put("STATUS_CODE", 200);
-		} catch (EntityNotFoundException e) {
-			e.printStackTrace();
-			responseMap.put("ERROR", "Book not Found. Invalid Key");
-			responseMap.put("STATUS_CODE", 404);
-		}
+	private static LinkedHashMap<String, Object> preconditionFailedResponse(LinkedHashMap<String, Object> responseMap,
+			String eTag) {
+		responseMap.put("PRECONDITION_FAILED", "Book was modified. Fetch it again and retry with the new ETag");
+		responseMap.put("ETAG", eTag);
+		responseMap.put("STATUS_CODE", 412);
 		return responseMap;
 	}
 
 	/**
-	 * Utility Methods used to Perform Validations on data sent in
-	 * HttpServletRequest.
-	 **/
-
+	 * Controller Methods
+	 */
 	/**
 	 * <p>
-	 * Validates the bookID by checking the datastore for the presence of the ID.
+	 * Checks if the client asked for indented JSON with the
+	 * <code>pretty=true</code> query parameter. Responses are compact otherwise.
 	 * </p>
 	 * 
-	 * @param bookID
+	 * @param request
 	 * @return boolean
 	 */
-	public static boolean bookIDValidator(String bookID) {
-		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-		// Validating the bookID
-		Entity entity = new Entity("Books", bookID);
-		try {
-			datastore.get(entity.getKey());
-			return true;
-		} catch (EntityNotFoundException e) {
-			e.printStackTrace();
-			return false;
-		}
+	public static boolean isPrettyRequest(HttpServletRequest request) {
+		// Checking the query string first keeps a form encoded body from being read
+		return request.getQueryString() != null && "true".equalsIgnoreCase(request.getParameter("pretty"));
+	}
+
+	/**
+	 * @param response
+	 * @param responseMap
+	 * @throws NumberFormatException
+	 * @throws IOException
+	 */
+	public static void sendPrettyJsonResponse(HttpServletResponse response, Map<String, Object> responseMap)
+			throws NumberFormatException, IOException {
+		setResponseStatusAndHeaders(response, responseMap);
+		writeJsonBody(response, responseMap, true);
 	}
 
 	/**
 	 * <p>
-	 * Validates the book details created from the HttpServeltRequest Body.
+	 * Sends the Response Map as compact JSON.
 	 * </p>
 	 * 
+	 * @param response
+	 * @param responseMap
+	 * @throws NumberFormatException
+	 * @throws IOException
+	 */
+	public static void sendJsonResponse(HttpServletResponse response, Map<String, Object> responseMap)
+			throws NumberFormatException, IOException {
+		setResponseStatusAndHeaders(response, responseMap);
+		writeJsonBody(response, responseMap, false);
+	}
+
+	/**
 	 * <p>
-	 * Call this method to validate data only when creating a new book.
+	 * Sends the Response Map as compact JSON, or indented when the request has
+	 * <code>pretty=true</code>.
 	 * </p>
 	 * 
-	 * @param book
-	 * @param errorMap
-	 * @return LinkedHashMap<String, Object>
+	 * @param request
+	 * @param response
+	 * @param responseMap
+	 * @throws NumberFormatException
+	 * @throws IOException
 	 */
-	private static LinkedHashMap<String, Object> requestBookValidator(Book book,
-			LinkedHashMap<String, Object> errorMap) {
+	public static void sendJsonResponse(HttpServletRequest request, HttpServletResponse response,
+			Map<String, Object> responseMap) throws NumberFormatException, IOException {
+		setResponseStatusAndHeaders(response, responseMap);
+		writeJsonBody(response, responseMap, isPrettyRequest(request));
+	}
 
-		int flag = 0;
+	/**
+	 * <p>
+	 * Sends the Response Map of a GET request, or a 304 Not Modified response
+	 * without a body when the client's copy is still current.
+	 * </p>
+	 * 
+	 * @param request
+	 * @param response
+	 * @param responseMap
+	 * @throws NumberFormatException
+	 * @throws IOException
+	 */
+	public static void sendConditionalJsonResponse(HttpServletRequest request, HttpServletResponse response,
+			Map<String, Object> responseMap) throws NumberFormatException, IOException {
+		if (isNotModified(request, responseMap)) {
+			responseMap.put("STATUS_CODE", 304);
+			setResponseStatusAndHeaders(response, responseMap);
+		} else {
+			sendJsonResponse(request, response, responseMap);
+		}
+	}
 
-		if (book.getAuthor().replaceAll(" ", "").length() == 0 || book.getAuthor().length() <= 0
-				|| book.getAuthor() == null) {
-			errorMap.put("AUTHOR_NAME_EMPTY_ERROR", "Author Name should contain atleast 1 character");
-			flag = 1;
-		} else if (book.getAuthor().replaceAll(" ", "").matches("[a-zA-Z.]+") == false
-				&& book.getAuthor().replaceAll(" ", "").length() != 0) {
-			errorMap.put("AUTHOR_NAME_FORMAT_ERROR", "Author Name should contain only alphabets");
-			flag = 1;
+	/**
+	 * <p>
+	 * Removes the STATUS_CODE, ETAG and LAST_MODIFIED keys from the Response Map
+	 * and sets them on the HttpServletResponse before the body is written.
+	 * </p>
+	 * 
+	 * @param response
+	 * @param responseMap
+	 * @throws NumberFormatException
+	 */
+	private static void setResponseStatusAndHeaders(HttpServletResponse response, Map<String, Object> responseMap)
+			throws NumberFormatException {
+		int code = Integer.parseInt(responseMap.remove("STATUS_CODE").toString());
+		Object eTag = responseMap.remove("ETAG");
+		Object lastModified = responseMap.remove("LAST_MODIFIED");
+		response.setStatus(code);
+		if (eTag != null) {
+			response.setHeader("ETag", eTag.toString());
+		}
+		if (lastModified != null) {
+			response.setDateHeader("Last-Modified", ((Date) lastModified).getTime());
 		}
+	}
 
-		if (book.getTitle().replaceAll(" ", "").length() == 0 || book.getTitle().length() <= 0
-				|| book.getTitle() == null) {
-			errorMap.put("TITLE_NAME_ERROR", "Title Name should contain atleast 1 character");
-			flag = 1;
+	/**
+	 * <p>
+	 * Serializes the body as UTF-8 JSON into a byte buffer, then writes the
+	 * buffer to the response's OutputStream with its Content-Length. The status
+	 * and headers must already be set.
+	 * </p>
+	 * <p>
+	 * Knowing the length up front lets the container send the body in one piece
+	 * instead of with chunked transfer encoding, and no intermediate String of
+	 * the whole body is built.
+	 * </p>
+	 * 
+	 * @param response
+	 * @param body
+	 * @param pretty   - true to indent the JSON
+	 * @throws IOException
+	 */
+	private static void writeJsonBody(HttpServletResponse response, Object body, boolean pretty) throws IOException {
+		JsonBodyBuffer buffer = new JsonBodyBuffer();
+		RequestTimer.Scope serialize = RequestTimer.begin(RequestTimer.Phase.SERIALIZE);
+		try {
+			JsonWriter writer = new JsonWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+			if (pretty) {
+				writer.setIndent("  ");
+			}
+			BooksGson.GSON.toJson(body, body.getClass(), writer);
+			writer.flush();
+		} finally {
+			serialize.close();
+		}
+		response.setContentType(JSON_CONTENT_TYPE);
+		response.setContentLength(buffer.size());
+		RequestTimer.Scope write = RequestTimer.begin(RequestTimer.Phase.WRITE);
+		try {
+			buffer.writeTo(response.getOutputStream());
+		} finally {
+			write.close();
 		}
+	}
 
-		if (book.getLanguage().replaceAll(" ", "").length() == 0 || book.getLanguage().length() <= 0
-				|| book.getLanguage() == null) {
-			errorMap.put("LANGUAGE_EMPTY_ERROR", "Language field can't be empty");
-			flag = 1;
+	/** ByteArrayOutputStream that writes its array out without copying it. */
+	private static class JsonBodyBuffer extends ByteArrayOutputStream {
+		private JsonBodyBuffer() {
+			super(1024);
 		}
-		if (book.getLanguage().replaceAll(" ", "").matches("[a-zA-Z]+") == false
-				&& book.getLanguage().replaceAll(" ", "").length() != 0) {
-			errorMap.put("LANGUAGE_FORMAT_ERROR", "Language field can contain only alphabets");
-			flag = 1;
+
+		@Override
+		public synchronized void writeTo(OutputStream out) throws IOException {
+			out.write(buf, 0, count);
 		}
+	}
 
+	/**
+	 * @param response
+	 * @param jsonData
+	 * @throws IOException
+	 */
+	public static void sendJsonResponse(HttpServletResponse response, String jsonData) throws IOException {
+		byte[] body = jsonData.getBytes(StandardCharsets.UTF_8);
+		response.setStatus(200);
+		response.setContentType(JSON_CONTENT_TYPE);
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
 
-		if (book.getPages() < 20) {
-			if (book.getPages() < 0) {
-				errorMap.put("PAGES_ERROR", "Page Count should be Positive");
-				flag = 1;
-			} else {
-				errorMap.put("PAGES_ERROR", "Book should have atleast 20 pages");
-				flag = 1;
+	/**
+	 * @param response
+	 * @param e
+	 * @throws IOException
+	 */
+	public static void sendInternalServerErrorResponse(HttpServletResponse response, Exception e) throws IOException {
+		BooksLog.event(logger, Level.SEVERE, "request.failed", e);
+		if (response.isCommitted()) {
+			// Part of the body was already sent, the status can't be changed anymore
+			return;
+		}
+		response.resetBuffer();
+		Map<String, String> internalServerErrorMap = new LinkedHashMap<String, String>();
+		internalServerErrorMap.put("500", "Something went wrong");
+		response.setStatus(500);
+		writeJsonBody(response, internalServerErrorMap, false);
+	}
+
+	/**
+	 * @param response
+	 * @param e
+	 * @throws IOException
+	 */
+	public static void sendRequestBodyTooLargeResponse(HttpServletResponse response, RequestBodyTooLargeException e)
+			throws IOException {
+		Map<String, String> requestErrorMap = new LinkedHashMap<String, String>();
+		requestErrorMap.put("REQUEST_TOO_LARGE_ERROR",
+				"Request body should not be larger than " + e.getMaximumBytes() + " bytes");
+		response.setStatus(413);
+		writeJsonBody(response, requestErrorMap, false);
+	}
+
+	/**
+	 * @param response
+	 * @throws IOException
+	 */
+	public static void sendEmptyRequestErrorResponse(HttpServletResponse response) throws IOException {
+		Map<String, String> requestErrorMap = new LinkedHashMap<String, String>();
+		requestErrorMap.put("EMPTY_REQUEST_ERROR", "Request should contain json body");
+		response.setStatus(400);
+		writeJsonBody(response, requestErrorMap, false);
+	}
+
+	/**
+	 * <p>
+	 * Streams <strong>all</strong> the Books from the Datastore straight into the
+	 * HttpServletResponse as <code>{"books": [...]}</code>, compact unless the
+	 * request has <code>pretty=true</code>.
+	 * </p>
+	 * <p>
+	 * The query is read in chunks of {@link #STREAMING_CHUNK_SIZE} entities and
+	 * every book is written as soon as it is read, so the memory used does not
+	 * grow with the number of books in the Datastore. The length of the body
+	 * isn't known up front, so this is the one response sent chunked.
+	 * </p>
+	 * <p>
+	 * Serializing the books and fetching the chunks after the first one are
+	 * interleaved with writing them, so all of it is timed as the write phase.
+	 * </p>
+	 * 
+	 * @param request
+	 * @param response
+	 * @param fields   - the fields served for every Book
+	 * @throws IOException
+	 */
+	public static void sendGetAllStreamingResponse(HttpServletRequest request, HttpServletResponse response,
+			BookFields fields) throws IOException {
+		DatastoreService datastore = BooksDatastore.getDatastoreService();
+		FetchOptions fetchOptions = FetchOptions.Builder.withChunkSize(STREAMING_CHUNK_SIZE)
+				.prefetchSize(STREAMING_CHUNK_SIZE);
+		// Unsorted, so only keys only and single Property projections are used,
+		// both served by built-in indexes
+		Query query = new Query("Books");
+		fields.applyProjection(query);
+		QueryResultIterator<Entity> bookEntities = datastore.prepare(query).asQueryResultIterator(fetchOptions);
+		response.setStatus(200);
+		response.setContentType(JSON_CONTENT_TYPE);
+		RequestTimer.Scope write = RequestTimer.begin(RequestTimer.Phase.WRITE);
+		try {
+			JsonWriter writer = new JsonWriter(new BufferedWriter(
+					new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8), 8192));
+			if (isPrettyRequest(request)) {
+				writer.setIndent("  ");
+			}
+			// Leaves out the fields that weren't requested
+			writer.setSerializeNulls(false);
+			writer.beginObject();
+			writer.name("books");
+			writer.beginArray();
+			int written = 0;
+			while (bookEntities.hasNext()) {
+				BooksGson.BOOK_ADAPTER.write(writer, bookFromEntity(bookEntities.next(), fields));
+				if (++written % STREAMING_CHUNK_SIZE == 0) {
+					writer.flush();
+				}
 			}
+			writer.endArray();
+			writer.endObject();
+			writer.flush();
+		} finally {
+			write.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Checks if the client asked for a page of Books by sending the
+	 * <code>limit</code> or <code>cursor</code> query parameters, or any of the
+	 * filters and sort order of a {@link BookQuery}.
+	 * </p>
+	 * 
+	 * @param request
+	 * @return boolean
+	 */
+	public static boolean isPageRequest(HttpServletRequest request) {
+		return request.getParameter("limit") != null || request.getParameter("cursor") != null
+				|| BookQuery.isQueryRequest(request);
+	}
+
+	/**
+	 * <p>
+	 * Serves a page of Books for the <code>limit</code> and <code>cursor</code>
+	 * query parameters, filtered and sorted as described in {@link BookQuery}.
+	 * The limit defaults to {@link #DEFAULT_PAGE_SIZE} and can't exceed
+	 * {@link #MAX_PAGE_SIZE}.
+	 * </p>
+	 * 
+	 * @param request
+	 * @param fields  - the fields served for every Book
+	 * @return LinkedHashMap<String, Object>
+	 */
+	public static LinkedHashMap<String, Object> processGetBooksPageRequest(HttpServletRequest request,
+			BookFields fields) {
+		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
+		int limit = limitFromRequest(request);
+		if (limit == 0) {
+			return invalidLimitResponse(responseMap);
+		}
+		BookQuery bookQuery = BookQuery.fromRequest(request);
+		if (bookQuery.getError() != null) {
+			responseMap.put("QUERY_ERROR", bookQuery.getError());
+			responseMap.put("STATUS_CODE", 400);
+			return responseMap;
+		}
+		try {
+			responseMap = BooksControllerUtilities.getAllBooks(request.getParameter("cursor"), limit, bookQuery,
+					fields);
+		} catch (DatastoreNeedIndexException e) {
+			BooksLog.rateLimitedEvent(logger, Level.WARNING, "query.not_indexed", "query", request.getQueryString(),
+					"error", e.getMessage());
+			responseMap.put("QUERY_ERROR", "This combination of filters and sort order is not supported");
+			responseMap.put("STATUS_CODE", 400);
+		} catch (IllegalArgumentException e) {
+			responseMap.put("CURSOR_ERROR", "cursor is invalid or has expired");
+			responseMap.put("STATUS_CODE", 400);
+		}
+		return responseMap;
+	}
+
+	/**
+	 * @param request
+	 * @return int - the <code>limit</code> query parameter,
+	 *         {@link #DEFAULT_PAGE_SIZE} without it, or 0 if it is not a number
+	 *         between 1 and {@link #MAX_PAGE_SIZE}
+	 */
+	private static int limitFromRequest(HttpServletRequest request) {
+		String limitParameter = request.getParameter("limit");
+		if (limitParameter == null) {
+			return DEFAULT_PAGE_SIZE;
+		}
+		try {
+			int limit = Integer.parseInt(limitParameter);
+			return limit > 0 && limit <= MAX_PAGE_SIZE ? limit : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static LinkedHashMap<String, Object> invalidLimitResponse(LinkedHashMap<String, Object> responseMap) {
+		responseMap.put("LIMIT_ERROR", "limit should be a number between 1 and " + MAX_PAGE_SIZE);
+		responseMap.put("STATUS_CODE", 400);
+		return responseMap;
+	}
+
+	/**
+	 * <p>
+	 * Serves the changes made to the Books after the <code>since</code> time or
+	 * the <code>cursor</code> returned by the previous call, see
+	 * {@link BooksChangeFeed}. The limit defaults to {@link #DEFAULT_PAGE_SIZE}
+	 * and can't exceed {@link #MAX_PAGE_SIZE}.
+	 * </p>
+	 * 
+	 * @param request
+	 * @param fields  - the fields served for every Book
+	 * @return LinkedHashMap<String, Object>
+	 */
+	public static LinkedHashMap<String, Object> processGetChangesRequest(HttpServletRequest request,
+			BookFields fields) {
+		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
+		int limit = limitFromRequest(request);
+		if (limit == 0) {
+			return invalidLimitResponse(responseMap);
+		}
+		try {
+			return BooksChangeFeed.getChanges(request.getParameter("since"), request.getParameter("cursor"), limit,
+					fields);
+		} catch (IllegalArgumentException e) {
+			responseMap.put("CHANGES_ERROR", "since should be milliseconds since the epoch or an ISO-8601 time"
+					+ " like 2023-05-01T10:15:30Z, or cursor a nextCursor returned by a previous call");
+			responseMap.put("STATUS_CODE", 400);
+			return responseMap;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Serves the Books for the comma separated IDs of the <code>ids</code> query
+	 * parameter.
+	 * </p>
+	 * 
+	 * @param request
+	 * @param fields  - the fields served for every Book
+	 * @return LinkedHashMap<String, Object>
+	 */
+	public static LinkedHashMap<String, Object> processLookupRequest(HttpServletRequest request,
+			BookFields fields) {
+		List<String> bookIDs = new ArrayList<>();
+		for (String bookID : request.getParameter("ids").split(",")) {
+			bookIDs.add(bookID.trim());
 		}
+		return BooksControllerUtilities.getBooks(bookIDs, fields);
+	}
 
-		if (book.getReleaseYear() <= 0) {
-			errorMap.put("YEAR_NEGATIVE_VALUE_ERROR", "Year should be positive");
-			flag = 1;
+	/**
+	 * <p>
+	 * Serves the Books for the IDs sent as <code>{"ids": [...]}</code> in the
+	 * request body, for lists of IDs too long for the query string.
+	 * </p>
+	 * 
+	 * @param requestJson
+	 * @return LinkedHashMap<String, Object>
+	 */
+	public static LinkedHashMap<String, Object> processLookupRequest(JsonElement requestJson) {
+		List<String> bookIDs = new ArrayList<>();
+		try {
+			JsonArray ids = requestJson.getAsJsonObject().getAsJsonArray("ids");
+			for (JsonElement id : ids) {
+				bookIDs.add(id.getAsString().trim());
+			}
+		} catch (IllegalStateException | ClassCastException | UnsupportedOperationException
+				| NullPointerException e) {
+			LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
+			responseMap.put("IDS_ERROR", "The request body should be {\"ids\": [...]} with string IDs");
+			responseMap.put("STATUS_CODE", 400);
+			return responseMap;
 		}
-		if (book.getReleaseYear() > Year.now().getValue()) {
-			errorMap.put("YEAR_FUTURE_VALUE_ERROR",
-					"Year should be less than or equal to the current year -> '" + Year.now().getValue() + "'");
-			flag = 1;
+		return BooksControllerUtilities.getBooks(bookIDs);
+	}
+
+	/**
+	 * @param responseMap
+	 * @param newBook - Book parsed by {@link #bookFromRequest(HttpServletRequest)}
+	 * @return
+	 * @throws EntityNotFoundException
+	 */
+	public static Map<String, Object> processCreateRequest(Map<String, Object> responseMap, Book newBook)
+			throws EntityNotFoundException {
+		responseMap = BooksControllerUtilities.createNewBook(newBook);
+		return responseMap;
+	}
+
+	/**
+	 * @param responseMap
+	 * @param bookID
+	 * @param newBook     - Book parsed by {@link #bookFromRequest(HttpServletRequest)}
+	 * @param ifMatch
+	 * @return
+	 * @throws EntityNotFoundException
+	 */
+	public static Map<String, Object> processUpdateRequest(Map<String, Object> responseMap, String bookID,
+			Book newBook, String ifMatch) throws EntityNotFoundException {
+		// Request has only book details to be updated
+		responseMap = BooksControllerUtilities.updateBook(newBook, bookID, ifMatch);
+		return responseMap;
+	}
+
+	/**
+	 * @param bookID
+	 * @param fields - the fields served
+	 * @return
+	 */
+	public static LinkedHashMap<String, Object> processGetOneBookRequest(String bookID, BookFields fields) {
+		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
+		try {
+			responseMap = BooksControllerUtilities.getOneBook(bookID, fields);
+		} catch (EntityNotFoundException e) {
+			BooksLog.rateLimitedEvent(logger, Level.INFO, "book.not_found", "bookID", bookID);
+			responseMap.put("ERROR", "Book not Found. Invalid Key");
+			responseMap.put("STATUS_CODE", 404);
 		}
+		return responseMap;
+	}
 
+	/**
+	 * Utility Methods used to Perform Validations on data sent in
+	 * HttpServletRequest.
+	 **/
 
-		if (flag == 1) {
-			errorMap.put("STATUS_CODE", 400);
+	/**
+	 * <p>
+	 * Validates the bookID by checking the datastore for the presence of the ID.
+	 * </p>
+	 * 
+	 * @param bookID
+	 * @return boolean
+	 */
+	public static boolean bookIDValidator(String bookID) {
+		// Validating the bookID
+		try {
+			BooksCache.get(bookID);
+			return true;
+		} catch (EntityNotFoundException e) {
+			BooksLog.rateLimitedEvent(logger, Level.INFO, "book.not_found", "bookID", bookID);
+			return false;
 		}
-		return errorMap;
+	}
 
+	/**
+	 * <p>
+	 * Validates the book details created from the HttpServeltRequest Body.
+	 * </p>
+	 * 
+	 * <p>
+	 * Call this method to validate data only when creating a new book.
+	 * </p>
+	 * 
+	 * @param book
+	 * @param errorMap
+	 * @return LinkedHashMap<String, Object>
+	 */
+	private static LinkedHashMap<String, Object> requestBookValidator(Book book,
+			LinkedHashMap<String, Object> errorMap) {
+		return BookValidator.CREATE.validate(book).addTo(errorMap);
 	}
 
 	/**
@@ -556,66 +1270,7 @@ public class BooksControllerUtilities {
 	 */
 	private static LinkedHashMap<String, Object> requestBookValidatorForUpdation(Book book,
 			LinkedHashMap<String, Object> errorMap) {
-
-		int flag = 0;
-
-		if (book.getAuthor().replaceAll(" ", "").length() == 0 || book.getAuthor().length() <= 0) {
-			errorMap.put("AUTHOR_NAME_EMPTY_ERROR", "Author Name should contain atleast 1 character");
-			flag = 1;
-		} else if (book.getAuthor().replaceAll(" ", "").matches("[a-zA-Z.]+") == false
-				&& book.getAuthor().replaceAll(" ", "").length() != 0) {
-			errorMap.put("AUTHOR_NAME_FORMAT_ERROR", "Author Name should contain only alphabets");
-			flag = 1;
-		}
-
-		if (book.getTitle() != null) {
-			if (book.getTitle().replaceAll(" ", "").length() == 0 || book.getTitle().length() <= 0) {
-				errorMap.put("TITLE_NAME_ERROR", "Title Name should contain atleast 1 character");
-				flag = 1;
-			}
-		}
-
-		if (book.getLanguage() != null) {
-			if (book.getLanguage().replaceAll(" ", "").length() == 0 || book.getLanguage().length() <= 0) {
-				errorMap.put("LANGUAGE_EMPTY_ERROR", "Language field can't be empty");
-				flag = 1;
-			}
-			if (book.getLanguage().replaceAll(" ", "").matches("[a-zA-Z]+") == false
-					&& book.getLanguage().replaceAll(" ", "").length() != 0) {
-				errorMap.put("LANGUAGE_FORMAT_ERROR", "Language field can contain only alphabets");
-				flag = 1;
-			}
-		}
-
-		if (book.getPages() != null) {
-
-			if (book.getPages() < 20) {
-				if (book.getPages() < 0) {
-					errorMap.put("PAGES_ERROR", "Page Count should be Positive");
-					flag = 1;
-				} else {
-					errorMap.put("PAGES_ERROR", "Book should have atleast 20 pages");
-					flag = 1;
-				}
-			}
-		}
-
-		if (book.getReleaseYear() != null) {
-			if (book.getReleaseYear() <= 0) {
-				errorMap.put("YEAR_NEGATIVE_VALUE_ERROR", "Year should be positive");
-				flag = 1;
-			}
-			if (book.getReleaseYear() > Year.now().getValue()) {
-				errorMap.put("YEAR_FUTURE_VALUE_ERROR",
-						"Year should be less than or equal to the current year -> '" + Year.now().getValue() + "'");
-				flag = 1;
-			}
-		}
-		if (flag == 1) {
-			errorMap.put("STATUS_CODE", 400);
-		}
-		return errorMap;
-
+		return BookValidator.UPDATE.validate(book).addTo(errorMap);
 	}
 
 	/** Utility Methods to Perform CRUD Operations for the Application **/
@@ -628,14 +1283,12 @@ public class BooksControllerUtilities {
 	 * POJO.
 	 * </p>
 	 * 
-	 * @param jsonInputString
+	 * @param newBook
 	 * @return LinkedHashMap<String, Object>
 	 * @throws EntityNotFoundException
 	 */
-	public static LinkedHashMap<String, Object> createNewBook(String jsonInputString) throws EntityNotFoundException {
-		Gson gson = new GsonBuilder().serializeNulls().excludeFieldsWithoutExposeAnnotation().create();
-		Book newBook = gson.fromJson(jsonInputString, Book.class);
-		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+	public static LinkedHashMap<String, Object> createNewBook(Book newBook) throws EntityNotFoundException {
+		DatastoreService datastore = BooksDatastore.getDatastoreService();
 		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
 		try {
 			responseMap = requestBookValidator(newBook, responseMap);
@@ -648,19 +1301,19 @@ public class BooksControllerUtilities {
 		} else {
 			String bookID = UUID.randomUUID().toString();
 			Entity entity = entityFromBook(newBook, bookID);
-			Key keyObj = datastore.put(entity);
 			try {
-				Entity responseEntity = datastore.get(keyObj);
-				Book responseBookData = new Book();
-				responseBookData = bookFromEntity(responseEntity);
-				responseMap = mapFromBook(responseBookData, responseMap);
+				datastore.put(entity);
+				// The response is built from the Entity that was just written
+				Book book = bookFromEntity(entity);
+				BooksEventStream.publish("create", book);
+				responseMap = mapFromBook(book, responseMap);
+				responseMap.put("ETAG", eTagFromEntity(entity));
 				responseMap.put("STATUS_CODE", 200);
 			} catch (Exception e) {
-				System.out.println("Thrown from createNewBook Method");
+				BooksLog.event(logger, Level.WARNING, "book.create_failed", e, "bookID", bookID);
 				responseMap.put("ERROR", "Book was not created");
 				responseMap.put("STATUS_CODE", 503);
-				e.printStackTrace();
-		}
+			}
 			return responseMap;
 		}
 	}
@@ -670,117 +1323,172 @@ public class BooksControllerUtilities {
 
 	/**
 	 * <p>
-	 * Fetches <strong>all</strong> the Books from the Datastore.
-	 * 
+	 * Fetches one page of the Books matching a {@link BookQuery} from the
+	 * Datastore.
+	 * </p>
 	 * <p>
-	 * By default the recently updated or created books will be served first. User
-	 * can also send parameters to sort the books based on properties both in the
-	 * order of ascending or descending.
+	 * The page is read with a single query bounded by <code>limit</code>. When the
+	 * page is full, the web safe Cursor pointing past its last book is returned as
+	 * <code>nextCursor</code> so the client can ask for the following page.
 	 * </p>
 	 * 
 	 * <p>
-	 * Parameter Names and their accepted values.
+	 * When only some fields are requested the page is read with a projection
+	 * query, falling back to whole Entities if no index serves the projection.
 	 * </p>
-	 * <ol>
-	 * <li>sortOnProperty = {"author", "publication", "title", "pages",
-	 * "releaseYear", "rating"}
-	 * <li>sortDirection = {"ASCENDING", "DESCENDING"}
-	 * </ol>
-	 * <p>
-	 * ParameterNames are <b>Case-Sensitive</b> while Values are.
-	 * <b>Case-Insensitive</b>
-	 * </p>
-	 * 
-	 * @param queryParameters
-	 * @return LinkedList<String>
-	 * @deprecated - <strong>DON'T USE</strong> THIS AS IT WILL CAUSE <strong> HEAP
-	 *             SPACE ERROR.</strong>This isn't the right way as it fetches all
-	 *             the books at once and that will cause major server issues when
-	 *             scaled.
-	 *             </p>
-	 */
-	@Deprecated
-	public static LinkedList<String> getAllBooks(Map<String, String> queryParameters) {
-		LinkedHashMap<String, Object> bookAsMap = new LinkedHashMap<String, Object>();
-		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-		String property = queryParameters.get("sortOnProperty");
-		String direction = queryParameters.get("sortDirection");
-		Query query = new Query("Books").addSort(property, SortDirection.DESCENDING);
-		if (direction.equalsIgnoreCase("ascending")) {
-			query = new Query("Books").addSort(property, SortDirection.ASCENDING);
-		}
-		List<Entity> bookEntities = datastore.prepare(query).asList(FetchOptions.Builder.withDefaults());
-		System.out.println(bookEntities);
-		List<Book> booksFromEntities = BooksControllerUtilities.booksFromEntities(bookEntities);
-		LinkedList<String> books = new LinkedList<>();
-		for (Book book : booksFromEntities) {
-			books.add(mapToJsonString(mapFromBook(book, bookAsMap)));
-		}
-		return books;
-	}
-
-	/**
-	 * @param startCursor
-	 * @return
+	 * 
+	 * @param startCursor - web safe Cursor sent by the client, null for the first
+	 *                    page
+	 * @param limit
+	 * @param bookQuery   - the filters and sort order
+	 * @param fields      - the fields served for every Book
+	 * @return LinkedHashMap<String, Object>
+	 * @throws IllegalArgumentException    - if the startCursor is not a valid
+	 *                                     Cursor
+	 * @throws DatastoreNeedIndexException - if no index serves the filters and
+	 *                                     sort order
 	 */
-	public static LinkedList<String> getAllBooks(String startCursor) {
-		int PAGE_SIZE = 15;
-		LinkedHashMap<String, Object> bookAsMap = new LinkedHashMap<String, Object>();
-		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-		FetchOptions fetchOptions = FetchOptions.Builder.withLimit(PAGE_SIZE);
+	public static LinkedHashMap<String, Object> getAllBooks(String startCursor, int limit, BookQuery bookQuery,
+			BookFields fields) throws IllegalArgumentException, DatastoreNeedIndexException {
+		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
+		DatastoreService datastore = BooksDatastore.getDatastoreService();
+		FetchOptions fetchOptions = FetchOptions.Builder.withLimit(limit);
 		if (startCursor != null) {
 			fetchOptions.startCursor(Cursor.fromWebSafeString(startCursor));
 		}
-		Query query = new Query("Books").addSort("CreatedOrUpdated", SortDirection.DESCENDING);
-		List<Entity> bookEntities = datastore.prepare(query).asQueryResultList(fetchOptions);
-		List<Book> booksFromEntities = BooksControllerUtilities.booksFromEntities(bookEntities);
-		LinkedList<String> books = new LinkedList<>();
-		for (Book book : booksFromEntities) {
-			books.add(mapToJsonString(mapFromBook(book, bookAsMap)));
+		Query query = bookQuery.toQuery();
+		QueryResultList<Entity> bookEntities;
+		if (fields.applyProjection(query)) {
+			try {
+				bookEntities = datastore.prepare(query).asQueryResultList(fetchOptions);
+			} catch (DatastoreNeedIndexException e) {
+				BooksLog.event(logger, Level.WARNING, "query.projection_not_indexed", "fields", fields, "error",
+						e.getMessage());
+				BookFields.projectionNotIndexed(query);
+				query = bookQuery.toQuery();
+				bookEntities = datastore.prepare(query).asQueryResultList(fetchOptions);
+			}
+		} else {
+			bookEntities = datastore.prepare(query).asQueryResultList(fetchOptions);
+		}
+		responseMap.put("books", BooksControllerUtilities.booksFromEntities(bookEntities, fields));
+		String nextCursor = null;
+		if (bookEntities.size() == limit) {
+			nextCursor = bookEntities.getCursor().toWebSafeString();
+			responseMap.put("nextCursor", nextCursor);
 		}
-		return books;
+		responseMap.put("ETAG", eTagFromEntities(bookEntities, nextCursor, fields));
+		Date lastModified = lastModifiedFromEntities(bookEntities);
+		if (lastModified != null) {
+			responseMap.put("LAST_MODIFIED", lastModified);
+		}
+		responseMap.put("STATUS_CODE", 200);
+		return responseMap;
 	}
 
 	/**
-	 * @param queryParameters
-	 * @param startCursor
-	 * @return
+	 * <p>
+	 * Serves the data of the Book when passed with the valid ID.
+	 * </p>
+	 * <p>
+	 * The Book is read through the {@link BooksCache}.
+	 * </p>
+	 * 
+	 * @param bookID
+	 * @return LinkedHashMap<String, Object>
+	 * @throws EntityNotFoundException
 	 */
-	public static LinkedHashMap<String, Object> getAllBooks() {
-		LinkedHashMap<String, Object> results = new LinkedHashMap<String, Object>();
-		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-		FetchOptions fetchOptions = FetchOptions.Builder.withDefaults();
-		Query query = new Query("Books");
-		List<Entity> bookEntities = datastore.prepare(query).asList(fetchOptions);
-		List<Book> booksFromEntities = BooksControllerUtilities.booksFromEntities(bookEntities);
-		results.put("books", booksFromEntities);
-		return results;
+	public static LinkedHashMap<String, Object> getOneBook(String bookID) throws EntityNotFoundException {
+		return getOneBook(bookID, BookFields.ALL);
 	}
 
 	/**
 	 * <p>
-	 * Serves the data of the Book when passed with the valid ID.
+	 * Serves the requested fields of the Book with the ID. A Book with only some
+	 * of its fields gets a weak ETag, as it is not the representation If-Match
+	 * checks against.
 	 * </p>
 	 * 
 	 * @param bookID
+	 * @param fields
 	 * @return LinkedHashMap<String, Object>
 	 * @throws EntityNotFoundException
 	 */
-	public static LinkedHashMap<String, Object> getOneBook(String bookID) throws EntityNotFoundException {
-		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-		Key bookKey = KeyFactory.createKey("Books", bookID);
+	public static LinkedHashMap<String, Object> getOneBook(String bookID, BookFields fields)
+			throws EntityNotFoundException {
 		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
 		try {
-			Entity responseEntity = datastore.get(bookKey);
-			Book responseBookData = BooksControllerUtilities.bookFromEntity(responseEntity);
+			Entity responseEntity = BooksCache.get(bookID);
+			Book responseBookData = BooksControllerUtilities.bookFromEntity(responseEntity, fields);
 			responseMap = mapFromBook(responseBookData, responseMap);
+			responseMap.put("ETAG", fields.isAll() ? eTagFromEntity(responseEntity)
+					: "W/" + eTagFromEntity(responseEntity));
+			Date lastModified = lastModifiedFromEntity(responseEntity);
+			if (lastModified != null) {
+				responseMap.put("LAST_MODIFIED", lastModified);
+			}
 			responseMap.put("STATUS_CODE", 200);
-		} catch (Exception e) {
-			System.out.println("Caught in getOneBook method");
-			e.printStackTrace();
+		} catch (EntityNotFoundException e) {
+			BooksLog.rateLimitedEvent(logger, Level.INFO, "book.not_found", "bookID", bookID);
 			responseMap.put("ERROR", "Book not Found. Invalid Key");
 			responseMap.put("STATUS_CODE", 404);
+		} catch (DatastoreFailureException | DatastoreTimeoutException | ApiProxy.ApiProxyException e) {
+			return datastoreUnavailableResponse(responseMap, "book.read_failed", bookID, e);
+		}
+		return responseMap;
+	}
+
+	/**
+	 * <p>
+	 * Serves the Books for many IDs with a single multi-key Datastore get, IDs
+	 * already in the {@link BooksCache} being served from memory.
+	 * </p>
+	 * <p>
+	 * The Books that were found are returned in the order of the IDs and the IDs
+	 * that were not found are listed under <code>missing</code>. Repeated IDs are
+	 * only served once.
+	 * </p>
+	 * 
+	 * @param bookIDs
+	 * @return LinkedHashMap<String, Object>
+	 */
+	public static LinkedHashMap<String, Object> getBooks(List<String> bookIDs) {
+		return getBooks(bookIDs, BookFields.ALL);
+	}
+
+	/**
+	 * <p>
+	 * Serves the requested fields of the Books for many IDs, see
+	 * {@link #getBooks(List)}.
+	 * </p>
+	 * 
+	 * @param bookIDs
+	 * @param fields
+	 * @return LinkedHashMap<String, Object>
+	 */
+	public static LinkedHashMap<String, Object> getBooks(List<String> bookIDs, BookFields fields) {
+		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
+		List<String> uniqueBookIDs = new ArrayList<>(new LinkedHashSet<>(bookIDs));
+		if (uniqueBookIDs.isEmpty() || uniqueBookIDs.contains("")) {
+			responseMap.put("IDS_ERROR", "ids should be a list of non empty book IDs");
+			responseMap.put("STATUS_CODE", 400);
+			return responseMap;
+		}
+		if (uniqueBookIDs.size() > MAX_LOOKUP_IDS) {
+			responseMap.put("IDS_ERROR", "At most " + MAX_LOOKUP_IDS + " books can be looked up at once");
+			responseMap.put("STATUS_CODE", 400);
+			return responseMap;
 		}
+		Map<String, Entity> bookEntities = BooksCache.getAll(uniqueBookIDs);
+		List<String> missingBookIDs = new ArrayList<>();
+		for (String bookID : uniqueBookIDs) {
+			if (bookEntities.containsKey(bookID) == false) {
+				missingBookIDs.add(bookID);
+			}
+		}
+		responseMap.put("books", booksFromEntities(new ArrayList<>(bookEntities.values()), fields));
+		responseMap.put("missing", missingBookIDs);
+		responseMap.put("STATUS_CODE", 200);
 		return responseMap;
 	}
 
@@ -795,35 +1503,59 @@ public class BooksControllerUtilities {
 	 * Call this Method to Update Fields of the Book.
 	 * </p>
 	 * 
-	 * @param jsonInputString
+	 * <p>
+	 * When the request sent an If-Match header, the Book is only updated if its
+	 * current ETag matches, otherwise a 412 response is returned. The check and the
+	 * write run in the same transaction.
+	 * </p>
+	 * 
+	 * @param newBook
 	 * @param bookID
+	 * @param ifMatch - value of the If-Match header, may be null
 	 * @return LinkedHashMap<String, Object>
 	 * @throws EntityNotFoundException
 	 */
-	public static LinkedHashMap<String, Object> updateBook(String jsonInputString, String bookID)
+	public static LinkedHashMap<String, Object> updateBook(Book newBook, String bookID, String ifMatch)
 			throws EntityNotFoundException {
-		Gson gson = new GsonBuilder().serializeNulls().excludeFieldsWithoutExposeAnnotation().create();
-		Book newBook = gson.fromJson(jsonInputString, Book.class);
-		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		DatastoreService datastore = BooksDatastore.getDatastoreService();
 		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
 		try {
 			responseMap = requestBookValidatorForUpdation(newBook, responseMap);
 			if (responseMap.size() != 0) {
 				return responseMap;
 			} else {
-				Entity entity = entityFromBookForUpdate(newBook, bookID);
-				Key keyObj = datastore.put(entity);
-				Entity responseEntity = datastore.get(keyObj);
-				Book responseBookData = new Book();
-				responseBookData = bookFromEntity(responseEntity);
-				responseMap = mapFromBook(responseBookData, responseMap);
-				responseMap.put("STATUS_CODE", 200);
+				Transaction transaction = datastore.beginTransaction();
+				try {
+					Entity datastoreEntity = datastore.get(transaction, KeyFactory.createKey("Books", bookID));
+					if (ifMatchSatisfied(ifMatch, eTagFromEntity(datastoreEntity)) == false) {
+						return preconditionFailedResponse(responseMap, eTagFromEntity(datastoreEntity));
+					}
+					Entity entity = entityFromBookForUpdate(newBook, datastoreEntity);
+					datastore.put(transaction, entity);
+					transaction.commit();
+					BooksCache.invalidate(bookID);
+					// The response is built from the Entity that was just written
+					Book book = bookFromEntity(entity);
+					BooksEventStream.publish("update", book);
+					responseMap = mapFromBook(book, responseMap);
+					responseMap.put("ETAG", eTagFromEntity(entity));
+					responseMap.put("STATUS_CODE", 200);
+				} finally {
+					if (transaction.isActive()) {
+						transaction.rollback();
+					}
+				}
 			}
-		} catch (Exception e) {
-			System.out.println("Thrown from updateBook Method");
+		} catch (ConcurrentModificationException e) {
+			BooksLog.rateLimitedEvent(logger, Level.INFO, "book.update_conflict", "bookID", bookID);
+			responseMap.put("ERROR", "Book was modified by another request. Retry the update");
+			responseMap.put("STATUS_CODE", 409);
+		} catch (EntityNotFoundException e) {
+			BooksLog.rateLimitedEvent(logger, Level.INFO, "book.not_found", "bookID", bookID);
 			responseMap.put("ERROR", "Book not Found. Invalid Key");
 			responseMap.put("STATUS_CODE", 404);
-			e.printStackTrace();
+		} catch (DatastoreFailureException | DatastoreTimeoutException | ApiProxy.ApiProxyException e) {
+			return datastoreUnavailableResponse(responseMap, "book.update_failed", bookID, e);
 		}
 		return responseMap;
 	}
@@ -836,28 +1568,421 @@ public class BooksControllerUtilities {
 	 * <p>
 	 * Deletes the Book Entity from Datastore and does not interact with the GCS.
 	 * </p>
+	 * <p>
+	 * When the request sent an If-Match header, the Book is only deleted if its
+	 * current ETag matches, otherwise a 412 response is returned. The check, the
+	 * delete and the tombstone that reports it in the {@link BooksChangeFeed} are
+	 * written in the same cross-group transaction.
+	 * </p>
 	 * 
 	 * @param bookID
+	 * @param ifMatch - value of the If-Match header, may be null
 	 * @return LinkedHashMap<String, Object>
 	 * @throws EntityNotFoundException
 	 */
-	public static LinkedHashMap<String, Object> deleteBook(String bookID) throws EntityNotFoundException {
-		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+	public static LinkedHashMap<String, Object> deleteBook(String bookID, String ifMatch)
+			throws EntityNotFoundException {
+		DatastoreService datastore = BooksDatastore.getDatastoreService();
 		Key entityKey = KeyFactory.createKey("Books", bookID);
 		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
+		Transaction transaction = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
 		try {
-			datastore.get(entityKey);
-			datastore.delete(entityKey);
+			Entity datastoreEntity = datastore.get(transaction, entityKey);
+			if (ifMatchSatisfied(ifMatch, eTagFromEntity(datastoreEntity)) == false) {
+				return preconditionFailedResponse(responseMap, eTagFromEntity(datastoreEntity));
+			}
+			// The delete and the tombstone don't depend on each other, both are sent at once
+			AsyncDatastoreService asyncDatastore = BooksDatastore.getAsyncDatastoreService();
+			Future<Void> delete = asyncDatastore.delete(transaction, entityKey);
+			Future<Key> tombstone = asyncDatastore.put(transaction, BooksChangeFeed.tombstoneFor(datastoreEntity));
+			BooksDatastore.await(delete);
+			BooksDatastore.await(tombstone);
+			transaction.commit();
+			BooksCache.invalidate(bookID);
+			BooksEventStream.publishDelete(bookID);
 			responseMap.put("SUCCESS", "Book was deleted");
 			responseMap.put("STATUS_CODE", 200);
-		} catch (Exception e) {
-			System.out.println("Caught in deleteBook Method");
-			e.printStackTrace();
+		} catch (ConcurrentModificationException e) {
+			BooksLog.rateLimitedEvent(logger, Level.INFO, "book.delete_conflict", "bookID", bookID);
+			responseMap.put("ERROR", "Book was modified by another request. Retry the delete");
+			responseMap.put("STATUS_CODE", 409);
+		} catch (EntityNotFoundException e) {
+			BooksLog.rateLimitedEvent(logger, Level.INFO, "book.not_found", "bookID", bookID);
 			responseMap.put("ERROR", "Book not Found. Invalid Key");
 			responseMap.put("STATUS_CODE", 404);
+		} catch (DatastoreFailureException | DatastoreTimeoutException | ApiProxy.ApiProxyException e) {
+			return datastoreUnavailableResponse(responseMap, "book.delete_failed", bookID, e);
+		} finally {
+			if (transaction.isActive()) {
+				transaction.rollback();
+			}
 		}
 		return responseMap;
 	}
 
+	/**
+	 * <p>
+	 * Answers a read or write of a Book that failed because the Datastore
+	 * couldn't serve it. Unlike a Book that isn't found this isn't expected, so
+	 * every failure is logged.
+	 * </p>
+	 * 
+	 * @param responseMap
+	 * @param event       - the name of the logged event
+	 * @param bookID
+	 * @param e
+	 * @return LinkedHashMap<String, Object> - a 503 response
+	 */
+	private static LinkedHashMap<String, Object> datastoreUnavailableResponse(LinkedHashMap<String, Object> responseMap,
+			String event, String bookID, RuntimeException e) {
+		BooksLog.event(logger, Level.WARNING, event, e, "bookID", bookID);
+		responseMap.clear();
+		responseMap.put("ERROR", "The Datastore is unavailable. Retry later");
+		responseMap.put("STATUS_CODE", 503);
+		return responseMap;
+	}
+
+	/** 5. BULK Operations **/
+
+	/**
+	 * A single create, update or delete operation of a bulk request together with
+	 * its result.
+	 */
+	private static class BulkOperation {
+		private final LinkedHashMap<String, Object> result = new LinkedHashMap<>();
+		private String op;
+		private Book book;
+		private String ifMatch;
+		private Key key;
+		private Entity entity;
+		private Transaction transaction;
+
+		private BulkOperation(int index) {
+			result.put("index", index);
+		}
+
+		private void fail(String errorCode, String message, int statusCode) {
+			result.put(errorCode, message);
+			result.put("STATUS_CODE", statusCode);
+		}
+
+		private boolean failed() {
+			return result.containsKey("STATUS_CODE");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Creates, updates and deletes many Books in one request.
+	 * </p>
+	 * <p>
+	 * The request body is a JSON array of operations:
+	 * </p>
+	 * <ol>
+	 * <li><code>{"op": "create", "book": {...}}</code>
+	 * <li><code>{"op": "update", "id": "...", "book": {...}, "ifMatch": "..."}</code>
+	 * <li><code>{"op": "delete", "id": "...", "ifMatch": "..."}</code>
+	 * </ol>
+	 * <p>
+	 * Books are validated the same way as single creates and updates. Creates are
+	 * sent as batched puts of at most {@link #BULK_WRITE_BATCH_SIZE} entities.
+	 * Each update and delete runs in its own transaction, like a single update or
+	 * delete, so its If-Match check and Version bump can't race with another
+	 * write; a conflict fails that operation with a 409. Batches and transactions
+	 * that don't depend on each other are sent concurrently with the
+	 * {@link AsyncDatastoreService}.
+	 * Every operation gets its own result with a STATUS_CODE, so a bad record
+	 * doesn't fail the whole request. The operations are not atomic as a whole.
+	 * </p>
+	 * 
+	 * @param requestJson
+	 * @return LinkedHashMap<String, Object>
+	 */
+	public static LinkedHashMap<String, Object> processBulkRequest(JsonElement requestJson) {
+		LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
+		if (requestJson.isJsonArray() == false) {
+			responseMap.put("BULK_FORMAT_ERROR", "The request body should be a json array of operations");
+			responseMap.put("STATUS_CODE", 400);
+			return responseMap;
+		}
+		JsonArray requestOperations = requestJson.getAsJsonArray();
+		if (requestOperations.size() > MAX_BULK_OPERATIONS) {
+			responseMap.put("BULK_SIZE_ERROR", "A bulk request can contain at most " + MAX_BULK_OPERATIONS
+					+ " operations");
+			responseMap.put("STATUS_CODE", 400);
+			return responseMap;
+		}
+
+		List<BulkOperation> operations = new ArrayList<>(requestOperations.size());
+		for (int index = 0; index < requestOperations.size(); index++) {
+			operations.add(bulkOperationFromJson(index, requestOperations.get(index)));
+		}
+
+		// Creates get new Keys that nothing else writes, updates and deletes are
+		// checked against the Book they change
+		AsyncDatastoreService asyncDatastore = BooksDatastore.getAsyncDatastoreService();
+		List<BulkOperation> creates = new ArrayList<>();
+		List<BulkOperation> changes = new ArrayList<>();
+		Set<Key> seenKeys = new HashSet<>();
+		for (BulkOperation operation : operations) {
+			if (operation.failed()) {
+				continue;
+			}
+			if (operation.op.equals("create")) {
+				creates.add(operation);
+			} else if (seenKeys.add(operation.key)) {
+				changes.add(operation);
+			} else {
+				operation.fail("DUPLICATE_ID_ERROR", "A book can only appear once in a bulk request", 400);
+			}
+		}
+
+		// The batches of creates are sent at once and written while the transactions run
+		List<List<BulkOperation>> createBatches = bulkBatches(creates);
+		List<Future<List<Key>>> createWrites = new ArrayList<>(createBatches.size());
+		for (List<BulkOperation> batch : createBatches) {
+			List<Entity> entities = new ArrayList<>(batch.size());
+			for (BulkOperation operation : batch) {
+				entities.add(operation.entity);
+			}
+			createWrites.add(asyncDatastore.put(entities));
+		}
+		for (int from = 0; from < changes.size(); from += BULK_TRANSACTION_WAVE_SIZE) {
+			runBulkTransactions(asyncDatastore,
+					changes.subList(from, Math.min(from + BULK_TRANSACTION_WAVE_SIZE, changes.size())));
+		}
+		for (int i = 0; i < createBatches.size(); i++) {
+			List<BulkOperation> batch = createBatches.get(i);
+			try {
+				BooksDatastore.await(createWrites.get(i));
+				for (BulkOperation operation : batch) {
+					bulkOperationWritten(operation);
+				}
+			} catch (Exception e) {
+				BooksLog.event(logger, Level.WARNING, "bulk.write_failed", e, "books", batch.size());
+				for (BulkOperation operation : batch) {
+					operation.fail("ERROR", "Book was not written", 503);
+				}
+			}
+		}
+
+		List<LinkedHashMap<String, Object>> results = new ArrayList<>(operations.size());
+		for (BulkOperation operation : operations) {
+			results.add(operation.result);
+		}
+		responseMap.put("results", results);
+		responseMap.put("STATUS_CODE", 200);
+		return responseMap;
+	}
+
+	/**
+	 * Splits the operations into batches of at most {@link #BULK_WRITE_BATCH_SIZE}.
+	 */
+	private static List<List<BulkOperation>> bulkBatches(List<BulkOperation> operations) {
+		List<List<BulkOperation>> batches = new ArrayList<>();
+		for (int from = 0; from < operations.size(); from += BULK_WRITE_BATCH_SIZE) {
+			batches.add(operations.subList(from, Math.min(from + BULK_WRITE_BATCH_SIZE, operations.size())));
+		}
+		return batches;
+	}
+
+	/**
+	 * <p>
+	 * Runs each update and delete of a wave in its own transaction, so the
+	 * If-Match check and the Version bump see the Book as it is when the write
+	 * commits. The transactions of a wave are sent concurrently, one step at a
+	 * time: begin, get, write, commit. An operation that loses to a concurrent
+	 * write gets a 409 and leaves the others alone.
+	 * </p>
+	 * 
+	 * @param asyncDatastore
+	 * @param wave - at most {@link #BULK_TRANSACTION_WAVE_SIZE} operations
+	 */
+	private static void runBulkTransactions(AsyncDatastoreService asyncDatastore, List<BulkOperation> wave) {
+		List<Future<Transaction>> begins = new ArrayList<>(wave.size());
+		for (BulkOperation operation : wave) {
+			// A delete also writes its tombstone, which is in another entity group
+			begins.add(asyncDatastore
+					.beginTransaction(TransactionOptions.Builder.withXG(operation.op.equals("delete"))));
+		}
+		List<Future<Map<Key, Entity>>> reads = new ArrayList<>(wave.size());
+		for (int i = 0; i < wave.size(); i++) {
+			BulkOperation operation = wave.get(i);
+			try {
+				operation.transaction = BooksDatastore.await(begins.get(i));
+				reads.add(asyncDatastore.get(operation.transaction, Collections.singleton(operation.key)));
+			} catch (Exception e) {
+				bulkTransactionFailed(operation, e);
+				reads.add(null);
+			}
+		}
+		List<List<Future<?>>> writes = new ArrayList<>(wave.size());
+		for (int i = 0; i < wave.size(); i++) {
+			BulkOperation operation = wave.get(i);
+			List<Future<?>> operationWrites = new ArrayList<>(2);
+			writes.add(operationWrites);
+			if (operation.failed()) {
+				continue;
+			}
+			try {
+				Entity datastoreEntity = BooksDatastore.await(reads.get(i)).get(operation.key);
+				if (datastoreEntity == null) {
+					operation.fail("ERROR", "Book not Found. Invalid Key", 404);
+				} else if (ifMatchSatisfied(operation.ifMatch, eTagFromEntity(datastoreEntity)) == false) {
+					operation.result.put("ETAG", eTagFromEntity(datastoreEntity));
+					operation.fail("PRECONDITION_FAILED", "Book was modified. Fetch it again and retry with the new ETag",
+							412);
+				} else if (operation.op.equals("update")) {
+					operation.entity = entityFromBookForUpdate(operation.book, datastoreEntity);
+					operationWrites.add(asyncDatastore.put(operation.transaction, operation.entity));
+				} else {
+					operation.entity = datastoreEntity;
+					operationWrites.add(asyncDatastore.delete(operation.transaction, operation.key));
+					operationWrites.add(asyncDatastore.put(operation.transaction,
+							BooksChangeFeed.tombstoneFor(datastoreEntity)));
+				}
+			} catch (Exception e) {
+				bulkTransactionFailed(operation, e);
+			}
+		}
+		List<Future<Void>> commits = new ArrayList<>(wave.size());
+		for (int i = 0; i < wave.size(); i++) {
+			BulkOperation operation = wave.get(i);
+			commits.add(null);
+			if (operation.failed()) {
+				continue;
+			}
+			try {
+				for (Future<?> write : writes.get(i)) {
+					BooksDatastore.await(write);
+				}
+				commits.set(i, operation.transaction.commitAsync());
+			} catch (Exception e) {
+				bulkTransactionFailed(operation, e);
+			}
+		}
+		List<Future<Void>> rollbacks = new ArrayList<>();
+		for (int i = 0; i < wave.size(); i++) {
+			BulkOperation operation = wave.get(i);
+			if (commits.get(i) != null) {
+				try {
+					BooksDatastore.await(commits.get(i));
+					bulkOperationWritten(operation);
+				} catch (Exception e) {
+					bulkTransactionFailed(operation, e);
+				}
+			}
+			if (operation.transaction != null && operation.transaction.isActive()) {
+				rollbacks.add(operation.transaction.rollbackAsync());
+			}
+		}
+		for (Future<Void> rollback : rollbacks) {
+			try {
+				BooksDatastore.await(rollback);
+			} catch (Exception e) {
+				BooksLog.event(logger, Level.WARNING, "bulk.rollback_failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Fills the result of a bulk operation whose write was stored.
+	 */
+	private static void bulkOperationWritten(BulkOperation operation) {
+		BooksCache.invalidate(operation.key.getName());
+		if (operation.op.equals("delete")) {
+			BooksEventStream.publishDelete(operation.key.getName());
+			operation.result.put("SUCCESS", "Book was deleted");
+		} else {
+			Book book = bookFromEntity(operation.entity);
+			BooksEventStream.publish(operation.op, book);
+			operation.result.putAll(mapFromBook(book, new LinkedHashMap<>()));
+			operation.result.put("ETAG", eTagFromEntity(operation.entity));
+		}
+		operation.result.put("STATUS_CODE", 200);
+	}
+
+	/**
+	 * Fails a bulk update or delete whose transaction did not commit.
+	 */
+	private static void bulkTransactionFailed(BulkOperation operation, Exception e) {
+		if (e instanceof ConcurrentModificationException) {
+			BooksLog.rateLimitedEvent(logger, Level.INFO, "bulk.conflict", "bookID", operation.key.getName());
+			operation.fail("ERROR", "Book was modified by another request. Retry the " + operation.op, 409);
+		} else {
+			BooksLog.event(logger, Level.WARNING, "bulk.write_failed", e, "bookID", operation.key.getName());
+			operation.fail("ERROR", "Book was not " + (operation.op.equals("update") ? "updated" : "deleted"), 503);
+		}
+	}
 
-}
\ No newline at end of file
+	/**
+	 * <p>
+	 * Reads and validates one operation of a bulk request. Creates get their new
+	 * Entity, updates and deletes get the Key of the Book they change.
+	 * </p>
+	 * 
+	 * @param index
+	 * @param operationJson
+	 * @return BulkOperation
+	 */
+	private static BulkOperation bulkOperationFromJson(int index, JsonElement operationJson) {
+		BulkOperation operation = new BulkOperation(index);
+		if (operationJson.isJsonObject() == false) {
+			operation.fail("REQUEST_BODY_ERROR", "An operation should be a json object", 400);
+			return operation;
+		}
+		JsonObject operationObject = operationJson.getAsJsonObject();
+		JsonElement op = operationObject.get("op");
+		JsonElement id = operationObject.get("id");
+		JsonElement book = operationObject.get("book");
+		JsonElement ifMatch = operationObject.get("ifMatch");
+		try {
+			operation.op = op == null || op.isJsonNull() ? "" : op.getAsString();
+			operation.result.put("op", operation.op);
+			if (ifMatch != null && ifMatch.isJsonNull() == false) {
+				operation.ifMatch = ifMatch.getAsString();
+			}
+			if (operation.op.equals("update") || operation.op.equals("delete")) {
+				if (id == null || id.isJsonNull() || id.getAsString().length() == 0) {
+					operation.fail("ID_ERROR", "id is required to " + operation.op + " a book", 400);
+					return operation;
+				}
+				operation.key = KeyFactory.createKey("Books", id.getAsString());
+				operation.result.put("id", id.getAsString());
+			}
+			if (operation.op.equals("create") || operation.op.equals("update")) {
+				if (book == null || book.isJsonObject() == false) {
+					operation.fail("REQUEST_BODY_ERROR", "The operation should contain a json book", 400);
+					return operation;
+				}
+				operation.book = BooksGson.GSON.fromJson(book, Book.class);
+				LinkedHashMap<String, Object> errorMap = new LinkedHashMap<>();
+				try {
+					if (operation.op.equals("create")) {
+						errorMap = requestBookValidator(operation.book, errorMap);
+					} else {
+						errorMap = requestBookValidatorForUpdation(operation.book, errorMap);
+					}
+				} catch (Exception e) {
+					errorMap.put("REQUEST_BODY_ERROR", "The request body should contain a json body");
+					errorMap.put("STATUS_CODE", 400);
+				}
+				if (errorMap.size() != 0) {
+					operation.result.putAll(errorMap);
+					return operation;
+				}
+				if (operation.op.equals("create")) {
+					String bookID = UUID.randomUUID().toString();
+					operation.entity = entityFromBook(operation.book, bookID);
+					operation.key = operation.entity.getKey();
+					operation.result.put("id", bookID);
+				}
+			} else if (operation.op.equals("delete") == false) {
+				operation.fail("OPERATION_ERROR", "op should be one of create, update or delete", 400);
+			}
+		} catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+			operation.fail("REQUEST_BODY_ERROR", "The operation contains invalid values", 400);
+		}
+		return operation;
+	}
+}
@@ -0,0 +1,250 @@
+package com.fullcreative.restapi.utilities;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Transaction;
+
+/**
+ * <p>
+ * Hands out the DatastoreService used by the Books API, instrumented so that
+ * every call is counted and timed in {@link BooksMetrics}.
+ * </p>
+ * <p>
+ * Calls are recorded under the name of the called method, e.g.
+ * <code>get</code>, <code>put</code>, <code>delete</code> or
+ * <code>prepare</code>. The PreparedQuery and Transaction objects returned by
+ * the service are instrumented too, as <code>query.asQueryResultList</code> or
+ * <code>transaction.commit</code>. Batches that a query iterator fetches after
+ * the first one are not timed. Calls are also timed as the datastore phase of
+ * the current {@link RequestTimer}.
+ * </p>
+ * <p>
+ * The {@link AsyncDatastoreService} is instrumented the same way, for sending
+ * independent calls concurrently. Its calls return as soon as the RPC is sent
+ * and are recorded once their Future is first waited on, with the time from
+ * the call until the result was there.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BooksDatastore {
+
+	private static final DatastoreService datastore = instrument(DatastoreServiceFactory.getDatastoreService(),
+			DatastoreService.class, "");
+
+	private static final AsyncDatastoreService asyncDatastore = instrument(
+			DatastoreServiceFactory.getAsyncDatastoreService(), AsyncDatastoreService.class, "");
+
+	private BooksDatastore() {
+	}
+
+	/**
+	 * @return DatastoreService - the instrumented DatastoreService, safe to share
+	 *         between threads
+	 */
+	public static DatastoreService getDatastoreService() {
+		return datastore;
+	}
+
+	/**
+	 * <p>
+	 * Transactions begun on either service can be used with the other.
+	 * </p>
+	 *
+	 * @return AsyncDatastoreService - the instrumented AsyncDatastoreService,
+	 *         safe to share between threads
+	 */
+	public static AsyncDatastoreService getAsyncDatastoreService() {
+		return asyncDatastore;
+	}
+
+	/**
+	 * <p>
+	 * Waits for the result of an async call. A failed call throws the exception
+	 * the synchronous call would have thrown.
+	 * </p>
+	 *
+	 * @param future
+	 * @return T
+	 */
+	public static <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static <T> T instrument(T target, Class<T> type, String prefix) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+				new TimedInvocationHandler(target, prefix)));
+	}
+
+	/**
+	 * Times every call to the target. Instrumented Transactions passed back to
+	 * the DatastoreService are unwrapped, the service only accepts its own.
+	 */
+	private static class TimedInvocationHandler implements InvocationHandler {
+		private final Object target;
+		private final String prefix;
+
+		private TimedInvocationHandler(Object target, String prefix) {
+			this.target = target;
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+			if (method.getDeclaringClass() == Object.class || isLocal(method)) {
+				try {
+					return method.invoke(target, arguments);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+			if (arguments != null) {
+				for (int i = 0; i < arguments.length; i++) {
+					arguments[i] = unwrap(arguments[i]);
+				}
+			}
+			boolean failed = false;
+			long start = System.nanoTime();
+			RequestTimer.Scope datastore = RequestTimer.begin(RequestTimer.Phase.DATASTORE);
+			try {
+				Object result = method.invoke(target, arguments);
+				if (result instanceof Future) {
+					// Recorded once the result is waited on
+					start = -1;
+					return new TimedFuture<>((Future<?>) result, prefix + method.getName(), System.nanoTime());
+				}
+				if (result instanceof PreparedQuery) {
+					return instrument((PreparedQuery) result, PreparedQuery.class, "query.");
+				}
+				if (result instanceof Transaction) {
+					return instrument((Transaction) result, Transaction.class, "transaction.");
+				}
+				return result;
+			} catch (InvocationTargetException e) {
+				failed = true;
+				throw e.getCause();
+			} finally {
+				datastore.close();
+				if (start != -1) {
+					BooksMetrics.datastoreCallCompleted(prefix + method.getName(), System.nanoTime() - start, failed);
+				}
+			}
+		}
+
+		/** Transactions only call the Datastore to commit or roll back. */
+		private static boolean isLocal(Method method) {
+			return method.getDeclaringClass() == Transaction.class && method.getName().startsWith("commit") == false
+					&& method.getName().startsWith("rollback") == false;
+		}
+
+		private static Object unwrap(Object argument) {
+			if (argument instanceof TimedFuture) {
+				return ((TimedFuture<?>) argument).target;
+			}
+			if (argument != null && Proxy.isProxyClass(argument.getClass())) {
+				InvocationHandler handler = Proxy.getInvocationHandler(argument);
+				if (handler instanceof TimedInvocationHandler) {
+					return ((TimedInvocationHandler) handler).target;
+				}
+			}
+			return argument;
+		}
+	}
+
+	/**
+	 * Future of an async call, recorded when it is first waited on. Transactions
+	 * it returns are instrumented like those of the synchronous service.
+	 */
+	private static class TimedFuture<T> implements Future<T> {
+		private final Future<T> target;
+		private final String name;
+		private final long start;
+		private boolean recorded;
+
+		private TimedFuture(Future<T> target, String name, long start) {
+			this.target = target;
+			this.name = name;
+			this.start = start;
+		}
+
+		@Override
+		public T get() throws InterruptedException, ExecutionException {
+			RequestTimer.Scope datastore = RequestTimer.begin(RequestTimer.Phase.DATASTORE);
+			try {
+				return instrumentResult(target.get(), false);
+			} catch (ExecutionException e) {
+				instrumentResult(null, true);
+				throw e;
+			} finally {
+				datastore.close();
+			}
+		}
+
+		@Override
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			RequestTimer.Scope datastore = RequestTimer.begin(RequestTimer.Phase.DATASTORE);
+			try {
+				return instrumentResult(target.get(timeout, unit), false);
+			} catch (ExecutionException e) {
+				instrumentResult(null, true);
+				throw e;
+			} finally {
+				datastore.close();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private T instrumentResult(T result, boolean failed) {
+			synchronized (this) {
+				if (recorded == false) {
+					recorded = true;
+					BooksMetrics.datastoreCallCompleted(name, System.nanoTime() - start, failed);
+				}
+			}
+			if (result instanceof Transaction) {
+				return (T) instrument((Transaction) result, Transaction.class, "transaction.");
+			}
+			return result;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return target.cancel(mayInterruptIfRunning);
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return target.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return target.isDone();
+		}
+	}
+}
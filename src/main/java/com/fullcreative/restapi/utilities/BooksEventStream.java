@@ -0,0 +1,477 @@
+package com.fullcreative.restapi.utilities;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fullcreative.restapi.models.Book;
+
+/**
+ * <p>
+ * Pushes the creates, updates and deletes of Books to the clients of
+ * <code>GET /books/_stream</code> as Server-Sent Events, e.g.
+ * </p>
+ *
+ * <pre>
+ * id: kq3x1z-42
+ * event: update
+ * data: {"id":"...","book":{...}}
+ * </pre>
+ * <p>
+ * Every subscriber is an async request. It holds no request thread while idle:
+ * events are written by the stream's writer thread or by the container once
+ * the connection can take more bytes, always with non-blocking writes. The
+ * requests that publish only queue their event, unless the writer thread
+ * can't be started or has died, then they write it themselves. A subscriber
+ * that fails while being written to is disconnected. Events that can't be written yet
+ * wait in a buffer of at most <code>books.stream.bufferSize</code> (64 by
+ * default) Books per subscriber, where the events of a Book replace its earlier
+ * ones. A subscriber that falls further behind gets a <code>resync</code> event
+ * and is disconnected, and should catch up with <code>GET /books/_changes</code>.
+ * </p>
+ * <p>
+ * The last <code>books.stream.replaySize</code> (1024 by default) events are
+ * kept, so a client that reconnects with a Last-Event-ID header gets the
+ * events it missed. When they are no longer kept, were published by another
+ * instance or touch more Books than the buffer holds, it gets a
+ * <code>resync</code> event instead and stays connected. A resync event has
+ * the ID of the last event it stands for, so the client doesn't ask for the
+ * same events again when it reconnects. Connections are
+ * closed after <code>books.stream.timeoutMillis</code> (10 minutes by default)
+ * and EventSource clients reconnect on their own. Only the mutations made on
+ * this instance are streamed, and on App Engine Standard responses are only
+ * sent once they are complete, so there every connection delivers its events
+ * when it times out.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BooksEventStream {
+
+	private static final Logger logger = BooksLog.getLogger(BooksEventStream.class);
+
+	private static final int MAX_SUBSCRIBERS = Integer.getInteger("books.stream.maxSubscribers", 1000);
+	private static final int BUFFER_SIZE = Integer.getInteger("books.stream.bufferSize", 64);
+	private static final int REPLAY_SIZE = Integer.getInteger("books.stream.replaySize", 1024);
+	private static final long HEARTBEAT_MILLIS = Long.getLong("books.stream.heartbeatMillis", 15000);
+	private static final long TIMEOUT_MILLIS = Long.getLong("books.stream.timeoutMillis", 600000);
+
+	/** Tells event IDs of this instance apart from those of earlier ones. */
+	private static final String STREAM_ID = Long.toString(System.currentTimeMillis(), 36);
+
+	/** Tells EventSource clients to reconnect after 3 seconds. */
+	private static final byte[] RETRY = "retry: 3000\n\n".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+	private static final String RESYNC = "event: resync\ndata: {\"changes\":\"/books/_changes\"}\n\n";
+
+	/** Guards the sequence, the replayed events and the subscribers. */
+	private static final Object lock = new Object();
+	private static long sequence;
+	private static final ArrayDeque<Event> replay = new ArrayDeque<>();
+	private static final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+	private BooksEventStream() {
+	}
+
+	/**
+	 * <p>
+	 * Pushes a create or update to the subscribers. To be called once the write
+	 * is committed.
+	 * </p>
+	 *
+	 * @param type - create or update
+	 * @param book - the Book as it was written, with its id
+	 */
+	public static void publish(String type, Book book) {
+		publish(type, book.getId(), book);
+	}
+
+	/**
+	 * <p>
+	 * Pushes a delete to the subscribers. To be called once the delete is
+	 * committed.
+	 * </p>
+	 *
+	 * @param bookID
+	 */
+	public static void publishDelete(String bookID) {
+		publish("delete", bookID, null);
+	}
+
+	private static void publish(String type, String bookID, Book book) {
+		synchronized (lock) {
+			Event event = new Event(++sequence, type, bookID, book);
+			replay.addLast(event);
+			if (replay.size() > REPLAY_SIZE) {
+				replay.removeFirst();
+			}
+			for (Subscriber subscriber : subscribers) {
+				subscriber.offer(event);
+			}
+		}
+		if (Writer.wakeUp() == false) {
+			// Written outside of the lock, a slow subscriber can't hold up the others
+			drainAll(false);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes what is pending to every subscriber. A subscriber that fails is
+	 * disconnected, the others still get their events.
+	 * </p>
+	 *
+	 * @param heartbeat - sends a heartbeat to the subscribers with nothing
+	 *                  pending
+	 */
+	private static void drainAll(boolean heartbeat) {
+		for (Subscriber subscriber : subscribers) {
+			try {
+				if (heartbeat) {
+					subscriber.heartbeat();
+				}
+				subscriber.drain();
+			} catch (RuntimeException e) {
+				BooksLog.rateLimitedEvent(logger, Level.WARNING, "stream.subscriber_failed", "error", e);
+				subscriber.close();
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Starts streaming the events to a client. The request is put in async mode
+	 * and the calling thread returns to the container right away.
+	 * </p>
+	 *
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	public static void subscribe(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (subscribers.size() >= MAX_SUBSCRIBERS) {
+			LinkedHashMap<String, Object> responseMap = new LinkedHashMap<>();
+			responseMap.put("ERROR", "Too many clients are streaming. Retry later or poll /books/_changes");
+			responseMap.put("STATUS_CODE", 503);
+			response.setHeader("Retry-After", "30");
+			BooksControllerUtilities.sendJsonResponse(response, responseMap);
+			return;
+		}
+		response.setStatus(200);
+		response.setContentType("text/event-stream; charset=UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+		// Stops proxies like nginx from holding the events back
+		response.setHeader("X-Accel-Buffering", "no");
+		AsyncContext asyncContext = request.startAsync(request, response);
+		asyncContext.setTimeout(TIMEOUT_MILLIS);
+		Subscriber subscriber = new Subscriber(asyncContext, response.getOutputStream());
+		asyncContext.addListener(subscriber);
+
+		String lastEventID = request.getHeader("Last-Event-ID");
+		synchronized (lock) {
+			long lastSequence = sequenceOf(lastEventID);
+			if (lastEventID != null) {
+				Set<String> missedBooks = new HashSet<>();
+				for (Event event : replay) {
+					if (event.sequence > lastSequence) {
+						missedBooks.add(event.bookID);
+					}
+				}
+				if (lastSequence < 0 || (replay.isEmpty() == false && replay.getFirst().sequence > lastSequence + 1)
+						|| lastSequence > sequence || missedBooks.size() > BUFFER_SIZE) {
+					// Too much to replay isn't an overflow, the client stays connected
+					subscriber.resync(sequence);
+				} else {
+					for (Event event : replay) {
+						if (event.sequence > lastSequence) {
+							subscriber.offer(event);
+						}
+					}
+				}
+			}
+			subscribers.add(subscriber);
+		}
+		Writer.start();
+		subscriber.output.setWriteListener(subscriber);
+	}
+
+	/**
+	 * @param eventID
+	 * @return long - the sequence of an event ID of this instance, -1 otherwise
+	 */
+	private static long sequenceOf(String eventID) {
+		if (eventID == null || eventID.startsWith(STREAM_ID + "-") == false) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(eventID.substring(STREAM_ID.length() + 1));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/** A mutation of a Book, serialized once for all the subscribers. */
+	private static class Event {
+		private final long sequence;
+		private final String type;
+		private final String bookID;
+		private final Book book;
+		private volatile byte[] bytes;
+
+		private Event(long sequence, String type, String bookID, Book book) {
+			this.sequence = sequence;
+			this.type = type;
+			this.bookID = bookID;
+			this.book = book;
+		}
+
+		private byte[] bytes() {
+			byte[] eventBytes = bytes;
+			if (eventBytes == null) {
+				LinkedHashMap<String, Object> data = new LinkedHashMap<>();
+				data.put("id", bookID);
+				if (book != null) {
+					data.put("book", book);
+				}
+				String event = "id: " + STREAM_ID + "-" + sequence + "\nevent: " + type + "\ndata: "
+						+ BooksGson.GSON.toJson(data) + "\n\n";
+				eventBytes = event.getBytes(StandardCharsets.UTF_8);
+				bytes = eventBytes;
+			}
+			return eventBytes;
+		}
+	}
+
+	/** A client of the stream and the events it hasn't been sent yet. */
+	private static class Subscriber implements WriteListener, AsyncListener {
+		private final AsyncContext asyncContext;
+		private final ServletOutputStream output;
+		/** Pending events by Book ID, the latest event of a Book replaces the others. */
+		private final LinkedHashMap<String, Event> pending = new LinkedHashMap<>();
+		/** Set once the container called {@link #onWritePossible()}, writes wait until then. */
+		private boolean writable;
+		private boolean retrySent;
+		/** Set when the client missed events, it is told to resync. */
+		private boolean resync;
+		/** The last event the resync stands for. */
+		private long resyncSequence;
+		/** Set when the client fell too far behind, it is disconnected after the resync. */
+		private boolean overflowed;
+		private boolean heartbeat;
+		private boolean flush;
+		private boolean closed;
+
+		private Subscriber(AsyncContext asyncContext, ServletOutputStream output) {
+			this.asyncContext = asyncContext;
+			this.output = output;
+		}
+
+		private synchronized void offer(Event event) {
+			if (closed || overflowed) {
+				return;
+			}
+			pending.remove(event.bookID);
+			pending.put(event.bookID, event);
+			if (pending.size() > BUFFER_SIZE) {
+				BooksLog.rateLimitedEvent(logger, Level.INFO, "stream.subscriber_overflow", "pending",
+						pending.size());
+				resync(event.sequence);
+				overflowed = true;
+			}
+		}
+
+		private synchronized void resync(long sequence) {
+			pending.clear();
+			resync = true;
+			resyncSequence = sequence;
+		}
+
+		private synchronized void heartbeat() {
+			heartbeat = true;
+		}
+
+		/**
+		 * Writes what is pending for as long as the connection takes it without
+		 * blocking. The container calls {@link #onWritePossible()} once it can take
+		 * more.
+		 */
+		private synchronized void drain() {
+			if (closed || writable == false) {
+				return;
+			}
+			try {
+				while (output.isReady()) {
+					Iterator<Event> events = pending.values().iterator();
+					if (retrySent == false) {
+						output.write(RETRY);
+						retrySent = true;
+						flush = true;
+					} else if (resync) {
+						output.write(("id: " + STREAM_ID + "-" + resyncSequence + "\n" + RESYNC)
+								.getBytes(StandardCharsets.UTF_8));
+						resync = false;
+						flush = true;
+					} else if (overflowed) {
+						close();
+						return;
+					} else if (events.hasNext()) {
+						Event event = events.next();
+						events.remove();
+						output.write(event.bytes());
+						heartbeat = false;
+						flush = true;
+					} else if (heartbeat) {
+						output.write(HEARTBEAT);
+						heartbeat = false;
+						flush = true;
+					} else if (flush) {
+						flush = false;
+						output.flush();
+					} else {
+						return;
+					}
+				}
+			} catch (IOException | IllegalStateException e) {
+				// The client went away
+				close();
+			}
+		}
+
+		private synchronized void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			pending.clear();
+			subscribers.remove(this);
+			try {
+				asyncContext.complete();
+			} catch (IllegalStateException e) {
+				// Already completed by the container
+			}
+		}
+
+		@Override
+		public void onWritePossible() {
+			synchronized (this) {
+				writable = true;
+			}
+			drain();
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			close();
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			synchronized (this) {
+				closed = true;
+				pending.clear();
+			}
+			subscribers.remove(this);
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			close();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			close();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+		}
+	}
+
+	/**
+	 * Writes the published events to the subscribers, so the requests that
+	 * publish don't pay for them, and sends a comment line to every subscriber
+	 * now and then, so proxies and load balancers don't close idle connections
+	 * and dead clients are found out.
+	 */
+	private static class Writer {
+		/** Null until started, a writer that died is started again by {@link #start()}. */
+		private static volatile Thread worker;
+		/** Guards {@link #published}, the writer waits on it. */
+		private static final Object signal = new Object();
+		private static boolean published;
+
+		private static synchronized void start() {
+			if (isAlive()) {
+				return;
+			}
+			try {
+				Thread thread = new Thread(Writer::run, "books-stream-writer");
+				thread.setDaemon(true);
+				thread.start();
+				worker = thread;
+			} catch (RuntimeException | Error e) {
+				// Threads can't outlive the request here, publishers write the events
+				BooksLog.rateLimitedEvent(logger, Level.WARNING, "stream.writer_not_started", "error", e);
+			}
+		}
+
+		private static boolean isAlive() {
+			Thread thread = worker;
+			return thread != null && thread.isAlive();
+		}
+
+		/**
+		 * @return boolean - false if there is no live writer thread
+		 */
+		private static boolean wakeUp() {
+			if (isAlive() == false) {
+				return false;
+			}
+			synchronized (signal) {
+				published = true;
+				signal.notify();
+			}
+			return true;
+		}
+
+		private static void run() {
+			long nextHeartbeat = System.currentTimeMillis() + HEARTBEAT_MILLIS;
+			while (true) {
+				synchronized (signal) {
+					try {
+						long wait = nextHeartbeat - System.currentTimeMillis();
+						while (published == false && wait > 0) {
+							signal.wait(wait);
+							wait = nextHeartbeat - System.currentTimeMillis();
+						}
+					} catch (InterruptedException e) {
+						return;
+					}
+					published = false;
+				}
+				boolean heartbeat = System.currentTimeMillis() >= nextHeartbeat;
+				if (heartbeat) {
+					nextHeartbeat = System.currentTimeMillis() + HEARTBEAT_MILLIS;
+				}
+				drainAll(heartbeat);
+			}
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.fullcreative.restapi.utilities;
+
+import com.fullcreative.restapi.models.Book;
+import com.fullcreative.restapi.models.BookTypeAdapter;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * <p>
+ * Shared, preconfigured Gson instances used to read and write every JSON
+ * payload of the application.
+ * </p>
+ * <p>
+ * Gson instances are thread-safe and cache the TypeAdapters they create, so
+ * they are built once instead of on every request. The {@link Book} POJO is
+ * handled by the {@link BookTypeAdapter} without reflection.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BooksGson {
+
+	/** Streaming adapter for Book, for code writing straight to a JsonWriter. */
+	public static final BookTypeAdapter BOOK_ADAPTER = new BookTypeAdapter();
+
+	/** Compact JSON. */
+	public static final Gson GSON = new GsonBuilder().registerTypeAdapter(Book.class, BOOK_ADAPTER).create();
+
+	/** Indented JSON. */
+	public static final Gson PRETTY_GSON = GSON.newBuilder().setPrettyPrinting().create();
+
+	private BooksGson() {
+	}
+}
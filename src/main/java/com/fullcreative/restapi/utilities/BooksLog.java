@@ -0,0 +1,198 @@
+package com.fullcreative.restapi.utilities;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Structured logging for the Books API on top of java.util.logging.
+ * </p>
+ * <p>
+ * Events are logged as a name followed by key=value pairs, e.g.
+ * <code>event=book.not_found bookID=42</code>, and the message is only built
+ * when the level is enabled. Levels are set per category, i.e. per logger
+ * name, in WEB-INF/logging.properties.
+ * </p>
+ * <p>
+ * Every logger under <code>com.fullcreative.restapi</code> publishes through
+ * an {@link AsyncLogHandler} wrapping the root Handlers, so the request thread
+ * only queues the record. Expected conditions that can happen on every
+ * request, like a book that isn't found, should be logged with
+ * {@link #rateLimitedEvent} so a burst of them can't flood the log.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BooksLog {
+
+	private static final String ROOT_CATEGORY = "com.fullcreative.restapi";
+
+	/** Records that can wait to be published before new ones are dropped. */
+	private static final int QUEUE_CAPACITY = Integer.getInteger("books.log.queueCapacity", 4096);
+
+	/** Rate limited events logged per event name and second. */
+	private static final int MAX_EVENTS_PER_SECOND = Integer.getInteger("books.log.maxEventsPerSecond", 5);
+
+	/** Holds the logger, java.util.logging only keeps weak references to them. */
+	private static final Logger rootLogger = installAsyncHandler();
+
+	private static final ConcurrentMap<String, RateLimit> rateLimits = new ConcurrentHashMap<>();
+
+	private BooksLog() {
+	}
+
+	private static Logger installAsyncHandler() {
+		Logger logger = Logger.getLogger(ROOT_CATEGORY);
+		Handler[] rootHandlers = LogManager.getLogManager().getLogger("").getHandlers();
+		logger.addHandler(new AsyncLogHandler(rootHandlers, QUEUE_CAPACITY));
+		logger.setUseParentHandlers(false);
+		return logger;
+	}
+
+	/**
+	 * <p>
+	 * Gets the logger of a category, named after the class.
+	 * </p>
+	 *
+	 * @param category
+	 * @return Logger
+	 */
+	public static Logger getLogger(Class<?> category) {
+		return Logger.getLogger(category.getName());
+	}
+
+	/**
+	 * <p>
+	 * Logs an event with key/value pairs.
+	 * </p>
+	 *
+	 * @param logger
+	 * @param level
+	 * @param event     - the name of the event, e.g. book.not_found
+	 * @param keyValues - alternating keys and values
+	 */
+	public static void event(Logger logger, Level level, String event, Object... keyValues) {
+		if (logger.isLoggable(level)) {
+			logger.log(level, format(event, keyValues, 0));
+		}
+	}
+
+	/**
+	 * <p>
+	 * Logs an event with key/value pairs and the exception that caused it.
+	 * </p>
+	 *
+	 * @param logger
+	 * @param level
+	 * @param event
+	 * @param thrown
+	 * @param keyValues - alternating keys and values
+	 */
+	public static void event(Logger logger, Level level, String event, Throwable thrown, Object... keyValues) {
+		if (logger.isLoggable(level)) {
+			logger.log(level, format(event, keyValues, 0), thrown);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Waits for the queued records to be published, e.g. before the JVM exits.
+	 * </p>
+	 */
+	public static void flush() {
+		for (Handler handler : rootLogger.getHandlers()) {
+			handler.flush();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Logs an event at most <code>books.log.maxEventsPerSecond</code> (5 by
+	 * default) times a second per event name. The first event logged after some
+	 * were suppressed reports how many were, as <code>suppressed=N</code>.
+	 * </p>
+	 *
+	 * @param logger
+	 * @param level
+	 * @param event
+	 * @param keyValues - alternating keys and values
+	 */
+	public static void rateLimitedEvent(Logger logger, Level level, String event, Object... keyValues) {
+		if (logger.isLoggable(level) == false) {
+			return;
+		}
+		RateLimit rateLimit = rateLimits.get(event);
+		if (rateLimit == null) {
+			rateLimit = rateLimits.computeIfAbsent(event, key -> new RateLimit());
+		}
+		long suppressed = rateLimit.tryAcquire(System.currentTimeMillis());
+		if (suppressed >= 0) {
+			logger.log(level, format(event, keyValues, suppressed));
+		}
+	}
+
+	private static String format(String event, Object[] keyValues, long suppressed) {
+		StringBuilder message = new StringBuilder(64).append("event=").append(event);
+		for (int i = 0; i + 1 < keyValues.length; i += 2) {
+			message.append(' ').append(keyValues[i]).append('=');
+			appendValue(message, keyValues[i + 1]);
+		}
+		if (suppressed > 0) {
+			message.append(" suppressed=").append(suppressed);
+		}
+		return message.toString();
+	}
+
+	/** Quotes values that contain spaces, quotes or equals signs. */
+	private static void appendValue(StringBuilder message, Object value) {
+		String text = String.valueOf(value);
+		boolean quote = text.isEmpty();
+		for (int i = 0; i < text.length() && quote == false; i++) {
+			char character = text.charAt(i);
+			quote = character == ' ' || character == '"' || character == '=' || character < ' ';
+		}
+		if (quote == false) {
+			message.append(text);
+			return;
+		}
+		message.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char character = text.charAt(i);
+			if (character == '"' || character == '\\') {
+				message.append('\\');
+			}
+			message.append(character < ' ' ? ' ' : character);
+		}
+		message.append('"');
+	}
+
+	/** Counts the events of one name in one second windows. */
+	private static class RateLimit {
+		private final AtomicLong windowStart = new AtomicLong();
+		private final AtomicInteger logged = new AtomicInteger();
+		private final AtomicLong suppressed = new AtomicLong();
+
+		/**
+		 * @return long - the number of events suppressed since the last one logged,
+		 *         or -1 if this one must be suppressed too
+		 */
+		private long tryAcquire(long now) {
+			long start = windowStart.get();
+			if (now - start >= 1000 && windowStart.compareAndSet(start, now)) {
+				logged.set(0);
+			}
+			if (logged.incrementAndGet() > MAX_EVENTS_PER_SECOND) {
+				suppressed.incrementAndGet();
+				return -1;
+			}
+			return suppressed.getAndSet(0);
+		}
+	}
+}
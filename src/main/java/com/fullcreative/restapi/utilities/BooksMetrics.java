@@ -0,0 +1,236 @@
+package com.fullcreative.restapi.utilities;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Per instance metrics of the Books API, written in the Prometheus text format
+ * by {@link #writeTo(PrintWriter)}.
+ * </p>
+ * <p>
+ * Every series is a set of {@link LongAdder}s, so recording a value never
+ * takes a lock. Series are created on first use and are keyed by their
+ * formatted label set, e.g. <code>method="GET",status="200"</code>.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BooksMetrics {
+
+	/** Upper bounds, in seconds, of the latency histogram buckets. */
+	private static final double[] LATENCY_BUCKETS = { 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1,
+			2.5, 5, 10 };
+
+	/** Upper bounds, in bytes, of the size histogram buckets. */
+	private static final double[] SIZE_BUCKETS = { 64, 256, 1024, 4096, 16384, 65536, 262144, 1048576, 4194304 };
+
+	private static final HistogramFamily requestDuration = new HistogramFamily(
+			"books_http_request_duration_seconds", "Time taken to serve HTTP requests.", LATENCY_BUCKETS);
+	private static final HistogramFamily requestSize = new HistogramFamily("books_http_request_size_bytes",
+			"Size of the HTTP request bodies read.", SIZE_BUCKETS);
+	private static final HistogramFamily responseSize = new HistogramFamily("books_http_response_size_bytes",
+			"Size of the HTTP response bodies written.", SIZE_BUCKETS);
+	private static final CounterFamily requestsInFlight = new CounterFamily("books_http_requests_in_flight",
+			"HTTP requests being served.", "gauge");
+	private static final HistogramFamily datastoreCallDuration = new HistogramFamily(
+			"books_datastore_call_duration_seconds", "Time taken by Datastore calls.", LATENCY_BUCKETS);
+	private static final CounterFamily datastoreCallErrors = new CounterFamily("books_datastore_call_errors_total",
+			"Datastore calls that threw an exception.", "counter");
+
+	private BooksMetrics() {
+	}
+
+	/** Recording **/
+
+	/**
+	 * <p>
+	 * Marks the start of a HTTP request. Every call must be followed by a call to
+	 * {@link #requestCompleted}.
+	 * </p>
+	 *
+	 * @param method
+	 */
+	public static void requestStarted(String method) {
+		requestsInFlight.get(label("method", method)).increment();
+	}
+
+	/**
+	 * <p>
+	 * Records a served HTTP request.
+	 * </p>
+	 *
+	 * @param method
+	 * @param endpoint      - the route template, e.g. /books/{id}
+	 * @param status
+	 * @param durationNanos
+	 * @param requestBytes
+	 * @param responseBytes
+	 */
+	public static void requestCompleted(String method, String endpoint, int status, long durationNanos,
+			long requestBytes, long responseBytes) {
+		requestsInFlight.get(label("method", method)).decrement();
+		String methodAndEndpoint = label("method", method) + "," + label("endpoint", endpoint);
+		String labels = methodAndEndpoint + "," + label("status", String.valueOf(status));
+		requestDuration.get(labels).observe(durationNanos / 1e9);
+		requestSize.get(methodAndEndpoint).observe(requestBytes);
+		responseSize.get(labels).observe(responseBytes);
+	}
+
+	/**
+	 * <p>
+	 * Records a call to the Datastore.
+	 * </p>
+	 *
+	 * @param operation     - the name of the called method, e.g. get or put
+	 * @param durationNanos
+	 * @param failed        - true if the call threw an exception
+	 */
+	public static void datastoreCallCompleted(String operation, long durationNanos, boolean failed) {
+		String labels = label("operation", operation);
+		datastoreCallDuration.get(labels).observe(durationNanos / 1e9);
+		if (failed) {
+			datastoreCallErrors.get(labels).increment();
+		}
+	}
+
+	private static String label(String name, String value) {
+		return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+	}
+
+	/** Exposition **/
+
+	/**
+	 * <p>
+	 * Writes every metric in the Prometheus text exposition format.
+	 * </p>
+	 *
+	 * @param writer
+	 */
+	public static void writeTo(PrintWriter writer) {
+		requestDuration.writeTo(writer);
+		requestSize.writeTo(writer);
+		responseSize.writeTo(writer);
+		requestsInFlight.writeTo(writer);
+		datastoreCallDuration.writeTo(writer);
+		datastoreCallErrors.writeTo(writer);
+		writeSample(writer, "books_cache_hits_total", "Book lookups served from the cache.", "counter",
+				BooksCache.getHitCount());
+		writeSample(writer, "books_cache_misses_total", "Book lookups read from the Datastore.", "counter",
+				BooksCache.getMissCount());
+		writeSample(writer, "books_cache_evictions_total", "Books evicted from the full cache.", "counter",
+				BooksCache.getEvictionCount());
+		writeSample(writer, "books_cache_size", "Books in the cache.", "gauge", BooksCache.size());
+		writeSample(writer, "books_log_records_dropped_total", "Log records dropped because the log queue was full.",
+				"counter", AsyncLogHandler.getDroppedCount());
+	}
+
+	private static void writeHeader(PrintWriter writer, String name, String help, String type) {
+		writer.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		writer.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void writeSample(PrintWriter writer, String name, String help, String type, long value) {
+		writeHeader(writer, name, help, type);
+		writer.append(name).append(' ').append(String.valueOf(value)).append('\n');
+	}
+
+	/** Metric Families **/
+
+	/** Counters or gauges of one metric, one per label set. */
+	private static class CounterFamily {
+		private final String name;
+		private final String help;
+		private final String type;
+		private final ConcurrentMap<String, LongAdder> series = new ConcurrentHashMap<>();
+
+		private CounterFamily(String name, String help, String type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+
+		private LongAdder get(String labels) {
+			LongAdder counter = series.get(labels);
+			return counter != null ? counter : series.computeIfAbsent(labels, key -> new LongAdder());
+		}
+
+		private void writeTo(PrintWriter writer) {
+			writeHeader(writer, name, help, type);
+			for (Map.Entry<String, LongAdder> entry : series.entrySet()) {
+				writer.append(name).append('{').append(entry.getKey()).append("} ")
+						.append(String.valueOf(entry.getValue().sum())).append('\n');
+			}
+		}
+	}
+
+	/** Histograms of one metric, one per label set. */
+	private static class HistogramFamily {
+		private final String name;
+		private final String help;
+		private final double[] bounds;
+		private final ConcurrentMap<String, Histogram> series = new ConcurrentHashMap<>();
+
+		private HistogramFamily(String name, String help, double[] bounds) {
+			this.name = name;
+			this.help = help;
+			this.bounds = bounds;
+		}
+
+		private Histogram get(String labels) {
+			Histogram histogram = series.get(labels);
+			return histogram != null ? histogram : series.computeIfAbsent(labels, key -> new Histogram(bounds));
+		}
+
+		private void writeTo(PrintWriter writer) {
+			writeHeader(writer, name, help, "histogram");
+			for (Map.Entry<String, Histogram> entry : series.entrySet()) {
+				String labels = entry.getKey();
+				Histogram histogram = entry.getValue();
+				long cumulativeCount = 0;
+				for (int i = 0; i <= bounds.length; i++) {
+					cumulativeCount += histogram.buckets[i].sum();
+					String bound = i < bounds.length ? String.valueOf(bounds[i]) : "+Inf";
+					writer.append(name).append("_bucket{").append(labels).append(",le=\"").append(bound)
+							.append("\"} ").append(String.valueOf(cumulativeCount)).append('\n');
+				}
+				writer.append(name).append("_sum{").append(labels).append("} ")
+						.append(String.valueOf(histogram.sum.sum())).append('\n');
+				writer.append(name).append("_count{").append(labels).append("} ")
+						.append(String.valueOf(cumulativeCount)).append('\n');
+			}
+		}
+	}
+
+	/**
+	 * Count of observed values per bucket. The counts are not cumulative, the
+	 * last bucket holds the values above the largest bound.
+	 */
+	private static class Histogram {
+		private final double[] bounds;
+		private final LongAdder[] buckets;
+		private final DoubleAdder sum = new DoubleAdder();
+
+		private Histogram(double[] bounds) {
+			this.bounds = bounds;
+			this.buckets = new LongAdder[bounds.length + 1];
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		private void observe(double value) {
+			int bucket = 0;
+			while (bucket < bounds.length && value > bounds[bucket]) {
+				bucket++;
+			}
+			buckets[bucket].increment();
+			sum.add(value);
+		}
+	}
+}
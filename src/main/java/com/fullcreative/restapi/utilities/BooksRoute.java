@@ -0,0 +1,142 @@
+package com.fullcreative.restapi.utilities;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * <p>
+ * Route of a HttpServletRequest sent to the Books end points, parsed once per
+ * request from the request URI.
+ * </p>
+ * <p>
+ * A route has the form <code>/{collection}[/{id}[/{subResource}]]</code>, where
+ * trailing slashes are ignored. The URI is scanned once for its slashes, only
+ * the offsets of the segments are kept and the segments are only turned into
+ * Strings when they are asked for.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class BooksRoute {
+
+	private final String requestURI;
+	private final boolean valid;
+	private final int collectionStart;
+	private final int collectionEnd;
+	private final int idStart;
+	private final int idEnd;
+	private final int subResourceStart;
+	private final int subResourceEnd;
+
+	private String bookID;
+	private String subResource;
+
+	private BooksRoute(String requestURI) {
+		this.requestURI = requestURI;
+		int end = requestURI.length();
+		while (end > 0 && requestURI.charAt(end - 1) == '/') {
+			end--;
+		}
+		int start = end > 0 && requestURI.charAt(0) == '/' ? 1 : 0;
+
+		collectionStart = start;
+		collectionEnd = segmentEnd(start, end);
+		idStart = collectionEnd < end ? collectionEnd + 1 : -1;
+		idEnd = idStart == -1 ? -1 : segmentEnd(idStart, end);
+		subResourceStart = idEnd != -1 && idEnd < end ? idEnd + 1 : -1;
+		subResourceEnd = subResourceStart == -1 ? -1 : segmentEnd(subResourceStart, end);
+
+		boolean hasMoreSegments = subResourceEnd != -1 && subResourceEnd < end;
+		boolean hasEmptySegment = collectionStart == collectionEnd || (idStart != -1 && idStart == idEnd)
+				|| (subResourceStart != -1 && subResourceStart == subResourceEnd);
+		valid = hasMoreSegments == false && hasEmptySegment == false;
+	}
+
+	private int segmentEnd(int segmentStart, int end) {
+		int slash = requestURI.indexOf('/', segmentStart);
+		return slash == -1 || slash > end ? end : slash;
+	}
+
+	/**
+	 * <p>
+	 * Parses the route of a HttpServletRequest.
+	 * </p>
+	 *
+	 * @param request
+	 * @return BooksRoute
+	 */
+	public static BooksRoute fromRequest(HttpServletRequest request) {
+		return new BooksRoute(request.getRequestURI());
+	}
+
+	/**
+	 * <p>
+	 * Parses the route of a request URI.
+	 * </p>
+	 *
+	 * @param requestURI
+	 * @return BooksRoute
+	 */
+	public static BooksRoute fromRequestURI(String requestURI) {
+		return new BooksRoute(requestURI);
+	}
+
+	/**
+	 * @return boolean - false if the URI has empty segments or more segments than
+	 *         a route can have
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+
+	public boolean hasBookID() {
+		return valid && idStart != -1;
+	}
+
+	public boolean hasSubResource() {
+		return valid && subResourceStart != -1;
+	}
+
+	/**
+	 * @return String - the ID segment of the route, null if there is none
+	 */
+	public String getBookID() {
+		if (bookID == null && hasBookID()) {
+			bookID = requestURI.substring(idStart, idEnd);
+		}
+		return bookID;
+	}
+
+	/**
+	 * @return String - the segment after the ID, null if there is none
+	 */
+	public String getSubResource() {
+		if (subResource == null && hasSubResource()) {
+			subResource = requestURI.substring(subResourceStart, subResourceEnd);
+		}
+		return subResource;
+	}
+
+	/**
+	 * <p>
+	 * Checks if the route is <code>/{collection}/{action}</code> for an action of
+	 * the collection such as <code>_bulk</code>, without creating a String.
+	 * </p>
+	 *
+	 * @param action
+	 * @return boolean
+	 */
+	public boolean isCollectionAction(String action) {
+		return hasBookID() && hasSubResource() == false && idEnd - idStart == action.length()
+				&& requestURI.regionMatches(idStart, action, 0, action.length());
+	}
+
+	/**
+	 * @param collection
+	 * @return boolean - true if the first segment of the route is the collection
+	 */
+	public boolean isCollection(String collection) {
+		return valid && collectionEnd - collectionStart == collection.length()
+				&& requestURI.regionMatches(collectionStart, collection, 0, collection.length());
+	}
+}
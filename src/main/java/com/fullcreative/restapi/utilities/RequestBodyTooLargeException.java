@@ -0,0 +1,28 @@
+package com.fullcreative.restapi.utilities;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * Thrown while reading a HttpServletRequest body that is larger than the
+ * maximum size accepted by the end point.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class RequestBodyTooLargeException extends IOException {
+
+	private static final long serialVersionUID = -3795108617301427954L;
+
+	private final long maximumBytes;
+
+	public RequestBodyTooLargeException(long maximumBytes) {
+		super("Request body is larger than " + maximumBytes + " bytes");
+		this.maximumBytes = maximumBytes;
+	}
+
+	public long getMaximumBytes() {
+		return maximumBytes;
+	}
+}
@@ -0,0 +1,162 @@
+package com.fullcreative.restapi.utilities;
+
+/**
+ * <p>
+ * Splits the time taken by the current request into phases, for the
+ * <code>Server-Timing</code> response header.
+ * </p>
+ * <p>
+ * A timer is started per request with {@link #start()} and is reached from
+ * anywhere on the request thread through {@link #begin(Phase)}, which returns
+ * a Scope to close when the phase ends:
+ * </p>
+ *
+ * <pre>
+ * RequestTimer.Scope parse = RequestTimer.begin(RequestTimer.Phase.PARSE);
+ * try {
+ * 	book = BooksGson.BOOK_ADAPTER.read(reader);
+ * } finally {
+ * 	parse.close();
+ * }
+ * </pre>
+ * <p>
+ * A try-with-resources statement works as well, but javac warns about a
+ * resource that is never referenced in its body.
+ * </p>
+ * <p>
+ * Phases may nest, in which case the time is charged to the innermost phase
+ * only, so the phases never add up to more than the whole request. When no
+ * timer was started on the thread, {@link #begin(Phase)} costs a ThreadLocal
+ * lookup.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class RequestTimer {
+
+	/** The phases a request is split into, in the order they are reported. */
+	public enum Phase {
+		PARSE("parse"), VALIDATE("validate"), DATASTORE("datastore"), SERIALIZE("serialize"), WRITE("write");
+
+		private final String metricName;
+
+		Phase(String metricName) {
+			this.metricName = metricName;
+		}
+	}
+
+	/** Ends the phase it was returned for when closed. */
+	public interface Scope extends AutoCloseable {
+		@Override
+		void close();
+	}
+
+	private static final int MAXIMUM_DEPTH = 8;
+	private static final Phase[] PHASES = Phase.values();
+	private static final Scope NO_TIMER = () -> {
+	};
+	private static final ThreadLocal<RequestTimer> current = new ThreadLocal<>();
+
+	private final long startNanos = System.nanoTime();
+	private final long[] phaseNanos = new long[PHASES.length];
+	private final boolean[] phaseSeen = new boolean[PHASES.length];
+	private final Phase[] activePhases = new Phase[MAXIMUM_DEPTH];
+	private int depth;
+	private long lastSwitchNanos;
+	private final Scope scope = this::end;
+
+	private RequestTimer() {
+	}
+
+	/**
+	 * <p>
+	 * Starts timing a request on the current thread.
+	 * </p>
+	 *
+	 * @return RequestTimer
+	 */
+	public static RequestTimer start() {
+		RequestTimer timer = new RequestTimer();
+		current.set(timer);
+		return timer;
+	}
+
+	/**
+	 * <p>
+	 * Stops timing the request on the current thread. Phases begun afterwards
+	 * are not recorded.
+	 * </p>
+	 */
+	public static void stop() {
+		current.remove();
+	}
+
+	/**
+	 * <p>
+	 * Begins a phase of the request timed on the current thread.
+	 * </p>
+	 *
+	 * @param phase
+	 * @return Scope - to close when the phase ends
+	 */
+	public static Scope begin(Phase phase) {
+		RequestTimer timer = current.get();
+		if (timer == null || timer.depth == MAXIMUM_DEPTH) {
+			return NO_TIMER;
+		}
+		long now = System.nanoTime();
+		if (timer.depth > 0) {
+			timer.phaseNanos[timer.activePhases[timer.depth - 1].ordinal()] += now - timer.lastSwitchNanos;
+		}
+		timer.activePhases[timer.depth++] = phase;
+		timer.phaseSeen[phase.ordinal()] = true;
+		timer.lastSwitchNanos = now;
+		return timer.scope;
+	}
+
+	private void end() {
+		long now = System.nanoTime();
+		phaseNanos[activePhases[--depth].ordinal()] += now - lastSwitchNanos;
+		lastSwitchNanos = now;
+	}
+
+	/**
+	 * @return long - nanoseconds since the request timer was started
+	 */
+	public long getElapsedNanos() {
+		return System.nanoTime() - startNanos;
+	}
+
+	/**
+	 * <p>
+	 * Formats the time spent in every phase seen so far and the total time as a
+	 * Server-Timing header value, in milliseconds, e.g.
+	 * <code>parse;dur=0.21, datastore;dur=4.05, total;dur=5.3</code>.
+	 * </p>
+	 *
+	 * @return String
+	 */
+	public String toServerTiming() {
+		StringBuilder serverTiming = new StringBuilder(128);
+		for (Phase phase : PHASES) {
+			if (phaseSeen[phase.ordinal()]) {
+				appendMetric(serverTiming, phase.metricName, phaseNanos[phase.ordinal()]);
+				serverTiming.append(", ");
+			}
+		}
+		appendMetric(serverTiming, "total", getElapsedNanos());
+		return serverTiming.toString();
+	}
+
+	private static void appendMetric(StringBuilder serverTiming, String name, long nanos) {
+		// Milliseconds with two decimals, without going through String.format
+		long hundredths = nanos / 10_000;
+		serverTiming.append(name).append(";dur=").append(hundredths / 100).append('.');
+		long fraction = hundredths % 100;
+		if (fraction < 10) {
+			serverTiming.append('0');
+		}
+		serverTiming.append(fraction);
+	}
+}
@@ -0,0 +1,63 @@
+package com.fullcreative.restapi.utilities;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>
+ * InputStream that throws a {@link RequestBodyTooLargeException} as soon as
+ * more than a maximum number of bytes is read from it, so an oversized request
+ * body is rejected before it is buffered.
+ * </p>
+ *
+ * @author Sriram
+ *
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+
+	private final long maximumBytes;
+	private long bytesRead;
+
+	public SizeLimitedInputStream(InputStream in, long maximumBytes) {
+		super(in);
+		this.maximumBytes = maximumBytes;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int result = super.read();
+		if (result != -1) {
+			count(1);
+		}
+		return result;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		int result = super.read(buffer, offset, length);
+		if (result > 0) {
+			count(result);
+		}
+		return result;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void count(long bytes) throws RequestBodyTooLargeException {
+		bytesRead += bytes;
+		if (bytesRead > maximumBytes) {
+			throw new RequestBodyTooLargeException(maximumBytes);
+		}
+	}
+}
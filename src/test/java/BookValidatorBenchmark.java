@@ -0,0 +1,36 @@
+import java.util.LinkedHashMap;
+
+import com.fullcreative.restapi.models.Book;
+import com.fullcreative.restapi.utilities.BookValidator;
+
+/**
+ * Compares {@link BookValidator} with the regex based validator it replaced,
+ * kept in {@link LegacyBookValidator}. Rough smoke timings, see
+ * {@link MicroBenchmark}; {@link BookValidatorTest} checks they agree.
+ */
+public class BookValidatorBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    Book validBook = book("Chinua Achebe", "Things Fall Apart", "English", 209, 1958);
+    Book invalidBook = book("J. R. R. Tolkien 3rd", " ", "Old English", 12, 3000);
+
+    MicroBenchmark.run("valid book, legacy regex validator",
+        () -> LegacyBookValidator.requestBookValidator(validBook, new LinkedHashMap<>()));
+    MicroBenchmark.run("valid book, BookValidator",
+        () -> BookValidator.CREATE.validate(validBook).addTo(new LinkedHashMap<>()));
+    MicroBenchmark.run("invalid book, legacy regex validator",
+        () -> LegacyBookValidator.requestBookValidator(invalidBook, new LinkedHashMap<>()));
+    MicroBenchmark.run("invalid book, BookValidator",
+        () -> BookValidator.CREATE.validate(invalidBook).addTo(new LinkedHashMap<>()));
+  }
+
+  private static Book book(String author, String title, String language, int pages, int releaseYear) {
+    Book book = new Book();
+    book.setAuthor(author);
+    book.setTitle(title);
+    book.setLanguage(language);
+    book.setPages(pages);
+    book.setReleaseYear(releaseYear);
+    return book;
+  }
+}
@@ -0,0 +1,174 @@
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fullcreative.restapi.models.Book;
+import com.fullcreative.restapi.utilities.BookValidator;
+import com.fullcreative.restapi.utilities.BooksGson;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Checks that {@link BookValidator} reports the same errors, in the same
+ * order, as the validators it replaced in {@link LegacyBookValidator}, and
+ * pins down where it deliberately differs.
+ */
+public class BookValidatorTest {
+
+  private static final int CURRENT_YEAR = Year.now().getValue();
+
+  private static final String[] TEXTS = { "Chinua Achebe", "", " ", "   ", "J. R. R. Tolkien", "Author 3rd",
+      "Old English", "English2", "\u00c9mile", " a " };
+  private static final int[] PAGES = { Integer.MIN_VALUE, -1, 0, 19, 20, 209 };
+  private static final int[] YEARS = { Integer.MIN_VALUE, -1, 0, 1, 1958, CURRENT_YEAR, CURRENT_YEAR + 1,
+      Integer.MAX_VALUE };
+
+  @Test
+  public void createMatchesLegacyForEveryCompleteBook() {
+    for (String text : TEXTS) {
+      assertCreateParity(book(text, "Things Fall Apart", "English", 209, 1958));
+      assertCreateParity(book("Chinua Achebe", text, "English", 209, 1958));
+      assertCreateParity(book("Chinua Achebe", "Things Fall Apart", text, 209, 1958));
+      assertCreateParity(book(text, text, text, 209, 1958));
+    }
+    for (int pages : PAGES) {
+      for (int year : YEARS) {
+        assertCreateParity(book("Chinua Achebe", "Things Fall Apart", "English", pages, year));
+        assertCreateParity(book(" ", "", "English2", pages, year));
+      }
+    }
+  }
+
+  @Test
+  public void updateMatchesLegacyWheneverAuthorIsSent() {
+    for (String text : TEXTS) {
+      assertUpdateParity(book(text, null, null, null, null));
+      assertUpdateParity(book("Chinua Achebe", text, null, null, null));
+      assertUpdateParity(book("Chinua Achebe", null, text, null, null));
+      assertUpdateParity(book(text, text, text, 209, 1958));
+    }
+    for (int pages : PAGES) {
+      for (int year : YEARS) {
+        assertUpdateParity(book("Chinua Achebe", null, null, pages, null));
+        assertUpdateParity(book("Chinua Achebe", null, null, null, year));
+        assertUpdateParity(book("Chinua Achebe", "", " ", pages, year));
+      }
+    }
+  }
+
+  @Test
+  public void createReportsMissingFieldsInsteadOfFailing() {
+    Book empty = new Book();
+    try {
+      LegacyBookValidator.requestBookValidator(empty, new LinkedHashMap<>());
+      Assert.fail("The legacy validator dereferenced missing fields");
+    } catch (NullPointerException expected) {
+      // Answered as a generic REQUEST_BODY_ERROR before BookValidator
+    }
+    LinkedHashMap<String, Object> errors = BookValidator.CREATE.validate(empty).addTo(new LinkedHashMap<>());
+    Assert.assertEquals("Author Name should contain atleast 1 character", errors.get("AUTHOR_NAME_EMPTY_ERROR"));
+    Assert.assertEquals("Title Name should contain atleast 1 character", errors.get("TITLE_NAME_ERROR"));
+    Assert.assertEquals("Language field can't be empty", errors.get("LANGUAGE_EMPTY_ERROR"));
+    Assert.assertEquals("Page Count is required", errors.get("PAGES_ERROR"));
+    Assert.assertEquals("Release Year is required", errors.get("YEAR_EMPTY_ERROR"));
+    Assert.assertEquals(400, errors.get("STATUS_CODE"));
+  }
+
+  @Test
+  public void createReportsOnlyTheMissingNumbers() {
+    LinkedHashMap<String, Object> errors = BookValidator.CREATE
+        .validate(book("Chinua Achebe", "Things Fall Apart", "English", null, 1958)).addTo(new LinkedHashMap<>());
+    Assert.assertEquals(keys("PAGES_ERROR", "STATUS_CODE"), new ArrayList<>(errors.keySet()));
+    Assert.assertEquals("Page Count is required", errors.get("PAGES_ERROR"));
+
+    errors = BookValidator.CREATE.validate(book("Chinua Achebe", "Things Fall Apart", "English", 209, null))
+        .addTo(new LinkedHashMap<>());
+    Assert.assertEquals(keys("YEAR_EMPTY_ERROR", "STATUS_CODE"), new ArrayList<>(errors.keySet()));
+  }
+
+  @Test
+  public void updateAcceptsBooksWithoutAuthor() {
+    try {
+      LegacyBookValidator.requestBookValidatorForUpdation(book(null, "Things Fall Apart", null, null, null),
+          new LinkedHashMap<>());
+      Assert.fail("The legacy validator dereferenced the missing author");
+    } catch (NullPointerException expected) {
+      // Answered as a 404 before BookValidator
+    }
+    Assert.assertTrue(BookValidator.UPDATE.validate(book(null, "Things Fall Apart", null, null, null)).isValid());
+    Assert.assertTrue(BookValidator.UPDATE.validate(new Book()).isValid());
+    LinkedHashMap<String, Object> errors = BookValidator.UPDATE.validate(book(null, " ", null, 0, CURRENT_YEAR + 1))
+        .addTo(new LinkedHashMap<>());
+    Assert.assertEquals(keys("TITLE_NAME_ERROR", "PAGES_ERROR", "YEAR_FUTURE_VALUE_ERROR", "STATUS_CODE"),
+        new ArrayList<>(errors.keySet()));
+  }
+
+  @Test
+  public void nonNumericNumbersAreRejectedWhileParsingLikeBefore() {
+    String[] bodies = { "{\"author\":\"A\",\"title\":\"T\",\"language\":\"L\",\"pages\":100,\"releaseYear\":\"abc\"}",
+        "{\"author\":\"A\",\"title\":\"T\",\"language\":\"L\",\"pages\":100,\"releaseYear\":19.5}",
+        "{\"author\":\"A\",\"title\":\"T\",\"language\":\"L\",\"pages\":\"many\",\"releaseYear\":1958}" };
+    for (String body : bodies) {
+      assertRejected(body, () -> LegacyBookValidator.parse(body));
+      assertRejected(body, () -> BooksGson.GSON.fromJson(body, Book.class));
+    }
+    // Numbers sent as strings were and still are accepted
+    String quoted = "{\"author\":\"A\",\"title\":\"T\",\"language\":\"L\",\"pages\":\"100\",\"releaseYear\":\"1958\"}";
+    Assert.assertEquals(Integer.valueOf(1958), LegacyBookValidator.parse(quoted).getReleaseYear());
+    Assert.assertEquals(Integer.valueOf(1958), BooksGson.GSON.fromJson(quoted, Book.class).getReleaseYear());
+  }
+
+  private static void assertRejected(String body, Runnable parse) {
+    try {
+      parse.run();
+      Assert.fail("Parsed " + body);
+    } catch (JsonSyntaxException expected) {
+      // The request is answered with a 400 before it is validated
+    }
+  }
+
+  private static void assertCreateParity(Book book) {
+    LinkedHashMap<String, Object> legacy = LegacyBookValidator.requestBookValidator(book, new LinkedHashMap<>());
+    LinkedHashMap<String, Object> current = BookValidator.CREATE.validate(book).addTo(new LinkedHashMap<>());
+    assertSameErrors(book, legacy, current);
+  }
+
+  private static void assertUpdateParity(Book book) {
+    LinkedHashMap<String, Object> legacy = LegacyBookValidator.requestBookValidatorForUpdation(book,
+        new LinkedHashMap<>());
+    LinkedHashMap<String, Object> current = BookValidator.UPDATE.validate(book).addTo(new LinkedHashMap<>());
+    assertSameErrors(book, legacy, current);
+  }
+
+  private static void assertSameErrors(Book book, LinkedHashMap<String, Object> legacy,
+      LinkedHashMap<String, Object> current) {
+    String description = BooksGson.GSON.toJson(book);
+    Assert.assertEquals(description, legacy, current);
+    Assert.assertEquals(description, new ArrayList<>(legacy.keySet()), new ArrayList<>(current.keySet()));
+  }
+
+  private static ArrayList<String> keys(String... keys) {
+    ArrayList<String> list = new ArrayList<>();
+    for (String key : keys) {
+      list.add(key);
+    }
+    return list;
+  }
+
+  private static Book book(String author, String title, String language, Integer pages, Integer releaseYear) {
+    Book book = new Book();
+    book.setAuthor(author);
+    book.setTitle(title);
+    book.setLanguage(language);
+    // The setters take ints, a missing number is left unset
+    if (pages != null) {
+      book.setPages(pages);
+    }
+    if (releaseYear != null) {
+      book.setReleaseYear(releaseYear);
+    }
+    return book;
+  }
+}
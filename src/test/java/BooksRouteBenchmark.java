@@ -0,0 +1,34 @@
+import java.util.Arrays;
+import java.util.List;
+
+import com.fullcreative.restapi.utilities.BooksRoute;
+
+/**
+ * Compares routing a request with {@link BooksRoute} against the previous
+ * approach of splitting the URI for every check, as doPut and doDelete did
+ * with hasBookID, isValidEndPoint and getBookIDFromUri. Rough smoke timings,
+ * see {@link MicroBenchmark}.
+ */
+public class BooksRouteBenchmark {
+
+  private static final String REQUEST_URI = "/books/4f8d1c2a-7a55-4b8e-9d57-0d4a5c1b2e11";
+
+  public static void main(String[] args) throws Exception {
+    MicroBenchmark.run("legacy split per check", () -> {
+      List<String> requestsArray = Arrays.asList(REQUEST_URI.split("/"));
+      boolean hasBookID = requestsArray.size() == 3;
+      requestsArray = Arrays.asList(REQUEST_URI.split("/"));
+      boolean isValidEndPoint = requestsArray.size() == 3 || requestsArray.size() == 2;
+      String[] segments = REQUEST_URI.split("/");
+      return hasBookID && isValidEndPoint ? segments[segments.length - 1] : null;
+    });
+    MicroBenchmark.run("BooksRoute", () -> {
+      BooksRoute route = BooksRoute.fromRequestURI(REQUEST_URI);
+      return route.hasBookID() && route.hasSubResource() == false ? route.getBookID() : null;
+    });
+    MicroBenchmark.run("BooksRoute, collection action", () -> {
+      BooksRoute route = BooksRoute.fromRequestURI("/books/_bulk");
+      return route.isCollectionAction("_bulk");
+    });
+  }
+}
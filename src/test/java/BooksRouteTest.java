@@ -0,0 +1,83 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fullcreative.restapi.utilities.BooksRoute;
+
+public class BooksRouteTest {
+
+  @Test
+  public void collection() {
+    for (String uri : new String[] { "/books", "/books/", "/books///" }) {
+      BooksRoute route = BooksRoute.fromRequestURI(uri);
+      Assert.assertTrue(uri, route.isValid());
+      Assert.assertTrue(uri, route.isCollection("books"));
+      Assert.assertFalse(uri, route.isCollection("book"));
+      Assert.assertFalse(uri, route.hasBookID());
+      Assert.assertNull(uri, route.getBookID());
+      Assert.assertFalse(uri, route.isCollectionAction("_bulk"));
+    }
+  }
+
+  @Test
+  public void bookIDWithTrailingSlashes() {
+    for (String uri : new String[] { "/books/abc", "/books/abc/", "/books/abc//" }) {
+      BooksRoute route = BooksRoute.fromRequestURI(uri);
+      Assert.assertTrue(uri, route.isValid());
+      Assert.assertEquals(uri, "abc", route.getBookID());
+      Assert.assertFalse(uri, route.hasSubResource());
+    }
+  }
+
+  @Test
+  public void subResource() {
+    BooksRoute route = BooksRoute.fromRequestURI("/books/abc/history/");
+    Assert.assertTrue(route.isValid());
+    Assert.assertEquals("abc", route.getBookID());
+    Assert.assertEquals("history", route.getSubResource());
+    Assert.assertFalse(route.isCollectionAction("abc"));
+  }
+
+  @Test
+  public void emptySegmentsAreInvalid() {
+    for (String uri : new String[] { "//books", "/books//abc", "/books/abc//history", "/", "" }) {
+      BooksRoute route = BooksRoute.fromRequestURI(uri);
+      Assert.assertFalse(uri, route.isValid());
+      Assert.assertFalse(uri, route.hasBookID());
+      Assert.assertFalse(uri, route.isCollection("books"));
+    }
+  }
+
+  @Test
+  public void tooManySegmentsAreInvalid() {
+    BooksRoute route = BooksRoute.fromRequestURI("/books/abc/history/1");
+    Assert.assertFalse(route.isValid());
+    Assert.assertNull(route.getBookID());
+    Assert.assertNull(route.getSubResource());
+  }
+
+  @Test
+  public void collectionActions() {
+    for (String action : new String[] { "_bulk", "_lookup", "_changes", "_stream" }) {
+      BooksRoute route = BooksRoute.fromRequestURI("/books/" + action + "/");
+      Assert.assertTrue(action, route.isCollectionAction(action));
+      Assert.assertEquals(action, route.getBookID());
+    }
+    BooksRoute route = BooksRoute.fromRequestURI("/books/_bulk/");
+    Assert.assertFalse(route.isCollectionAction("_bulkier"));
+    Assert.assertFalse(route.isCollectionAction("_bul"));
+    Assert.assertFalse(route.isCollectionAction("_lookup"));
+    Assert.assertFalse(BooksRoute.fromRequestURI("/books/_bulk/1").isCollectionAction("_bulk"));
+  }
+
+  @Test
+  public void unknownActionsAndIDsStartingWithUnderscoreAreBookIDs() {
+    for (String id : new String[] { "_unknown", "_", "_bulkier", "__bulk" }) {
+      BooksRoute route = BooksRoute.fromRequestURI("/books/" + id);
+      Assert.assertTrue(id, route.isValid());
+      Assert.assertEquals(id, id, route.getBookID());
+      for (String action : new String[] { "_bulk", "_lookup", "_changes", "_stream" }) {
+        Assert.assertFalse(id, route.isCollectionAction(action));
+      }
+    }
+  }
+}
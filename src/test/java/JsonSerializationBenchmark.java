@@ -0,0 +1,47 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fullcreative.restapi.models.Book;
+import com.fullcreative.restapi.utilities.BooksGson;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Compares the per-request cost of building a new Gson instance for every
+ * response (the previous behaviour) with the shared {@link BooksGson}
+ * instances and their reflection-free Book adapter. Rough smoke timings, see
+ * {@link MicroBenchmark}.
+ */
+public class JsonSerializationBenchmark {
+
+  private static final String BOOK_JSON = "{\"author\":\"Chinua Achebe\",\"language\":\"English\","
+      + "\"pages\":209,\"title\":\"Things Fall Apart\",\"releaseYear\":1958}";
+
+  public static void main(String[] args) throws Exception {
+    Map<String, Object> responseMap = new LinkedHashMap<>();
+    responseMap.put("id", "4f8d1c2a-7a55-4b8e-9d57-0d4a5c1b2e11");
+    responseMap.put("author", "Chinua Achebe");
+    responseMap.put("title", "Things Fall Apart");
+    responseMap.put("language", "English");
+    responseMap.put("pages", 209);
+    responseMap.put("releaseYear", 1958);
+    Book book = BooksGson.GSON.fromJson(BOOK_JSON, Book.class);
+
+    MicroBenchmark.run("response map, new pretty Gson per request",
+        () -> new GsonBuilder().setPrettyPrinting().create().toJson(responseMap));
+    MicroBenchmark.run("response map, shared pretty Gson",
+        () -> BooksGson.PRETTY_GSON.toJson(responseMap));
+
+    MicroBenchmark.run("read Book, new reflective Gson per request",
+        () -> new GsonBuilder().serializeNulls().excludeFieldsWithoutExposeAnnotation().create()
+            .fromJson(BOOK_JSON, Book.class));
+    Gson reflectiveGson = new GsonBuilder().serializeNulls().excludeFieldsWithoutExposeAnnotation().create();
+    MicroBenchmark.run("read Book, shared reflective Gson",
+        () -> reflectiveGson.fromJson(BOOK_JSON, Book.class));
+    MicroBenchmark.run("read Book, shared Gson with BookTypeAdapter",
+        () -> BooksGson.GSON.fromJson(BOOK_JSON, Book.class));
+
+    MicroBenchmark.run("write Book, new Gson per request", () -> new Gson().toJson(book));
+    MicroBenchmark.run("write Book, shared Gson with BookTypeAdapter", () -> BooksGson.GSON.toJson(book));
+  }
+}
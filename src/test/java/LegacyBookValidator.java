@@ -0,0 +1,132 @@
+import java.time.Year;
+import java.util.LinkedHashMap;
+
+import com.fullcreative.restapi.models.Book;
+import com.fullcreative.restapi.utilities.BookValidator;
+import com.google.gson.GsonBuilder;
+
+/**
+ * The request parsing and the regex based create and update validators that
+ * {@link BookValidator} replaced, kept as they were for the parity tests and
+ * the benchmark.
+ */
+public class LegacyBookValidator {
+
+  private LegacyBookValidator() {
+  }
+
+  /** Parses a request body the way the Books End Points did before BooksGson. */
+  public static Book parse(String json) {
+    return new GsonBuilder().serializeNulls().excludeFieldsWithoutExposeAnnotation().create().fromJson(json,
+        Book.class);
+  }
+
+  /** The create validator as it was before BookValidator. */
+  public static LinkedHashMap<String, Object> requestBookValidator(Book book,
+      LinkedHashMap<String, Object> errorMap) {
+    int flag = 0;
+    if (book.getAuthor().replaceAll(" ", "").length() == 0 || book.getAuthor().length() <= 0
+        || book.getAuthor() == null) {
+      errorMap.put("AUTHOR_NAME_EMPTY_ERROR", "Author Name should contain atleast 1 character");
+      flag = 1;
+    } else if (book.getAuthor().replaceAll(" ", "").matches("[a-zA-Z.]+") == false
+        && book.getAuthor().replaceAll(" ", "").length() != 0) {
+      errorMap.put("AUTHOR_NAME_FORMAT_ERROR", "Author Name should contain only alphabets");
+      flag = 1;
+    }
+    if (book.getTitle().replaceAll(" ", "").length() == 0 || book.getTitle().length() <= 0
+        || book.getTitle() == null) {
+      errorMap.put("TITLE_NAME_ERROR", "Title Name should contain atleast 1 character");
+      flag = 1;
+    }
+    if (book.getLanguage().replaceAll(" ", "").length() == 0 || book.getLanguage().length() <= 0
+        || book.getLanguage() == null) {
+      errorMap.put("LANGUAGE_EMPTY_ERROR", "Language field can't be empty");
+      flag = 1;
+    }
+    if (book.getLanguage().replaceAll(" ", "").matches("[a-zA-Z]+") == false
+        && book.getLanguage().replaceAll(" ", "").length() != 0) {
+      errorMap.put("LANGUAGE_FORMAT_ERROR", "Language field can contain only alphabets");
+      flag = 1;
+    }
+    if (book.getPages() < 20) {
+      if (book.getPages() < 0) {
+        errorMap.put("PAGES_ERROR", "Page Count should be Positive");
+        flag = 1;
+      } else {
+        errorMap.put("PAGES_ERROR", "Book should have atleast 20 pages");
+        flag = 1;
+      }
+    }
+    if (book.getReleaseYear() <= 0) {
+      errorMap.put("YEAR_NEGATIVE_VALUE_ERROR", "Year should be positive");
+      flag = 1;
+    }
+    if (book.getReleaseYear() > Year.now().getValue()) {
+      errorMap.put("YEAR_FUTURE_VALUE_ERROR",
+          "Year should be less than or equal to the current year -> '" + Year.now().getValue() + "'");
+      flag = 1;
+    }
+    if (flag == 1) {
+      errorMap.put("STATUS_CODE", 400);
+    }
+    return errorMap;
+  }
+
+  /** The update validator as it was before BookValidator. */
+  public static LinkedHashMap<String, Object> requestBookValidatorForUpdation(Book book,
+      LinkedHashMap<String, Object> errorMap) {
+    int flag = 0;
+    if (book.getAuthor().replaceAll(" ", "").length() == 0 || book.getAuthor().length() <= 0) {
+      errorMap.put("AUTHOR_NAME_EMPTY_ERROR", "Author Name should contain atleast 1 character");
+      flag = 1;
+    } else if (book.getAuthor().replaceAll(" ", "").matches("[a-zA-Z.]+") == false
+        && book.getAuthor().replaceAll(" ", "").length() != 0) {
+      errorMap.put("AUTHOR_NAME_FORMAT_ERROR", "Author Name should contain only alphabets");
+      flag = 1;
+    }
+    if (book.getTitle() != null) {
+      if (book.getTitle().replaceAll(" ", "").length() == 0 || book.getTitle().length() <= 0) {
+        errorMap.put("TITLE_NAME_ERROR", "Title Name should contain atleast 1 character");
+        flag = 1;
+      }
+    }
+    if (book.getLanguage() != null) {
+      if (book.getLanguage().replaceAll(" ", "").length() == 0 || book.getLanguage().length() <= 0) {
+        errorMap.put("LANGUAGE_EMPTY_ERROR", "Language field can't be empty");
+        flag = 1;
+      }
+      if (book.getLanguage().replaceAll(" ", "").matches("[a-zA-Z]+") == false
+          && book.getLanguage().replaceAll(" ", "").length() != 0) {
+        errorMap.put("LANGUAGE_FORMAT_ERROR", "Language field can contain only alphabets");
+        flag = 1;
+      }
+    }
+    if (book.getPages() != null) {
+      if (book.getPages() < 20) {
+        if (book.getPages() < 0) {
+          errorMap.put("PAGES_ERROR", "Page Count should be Positive");
+          flag = 1;
+        } else {
+          errorMap.put("PAGES_ERROR", "Book should have atleast 20 pages");
+          flag = 1;
+        }
+      }
+    }
+    if (book.getReleaseYear() != null) {
+      if (book.getReleaseYear() <= 0) {
+        errorMap.put("YEAR_NEGATIVE_VALUE_ERROR", "Year should be positive");
+        flag = 1;
+      }
+      if (book.getReleaseYear() > Year.now().getValue()) {
+        errorMap.put("YEAR_FUTURE_VALUE_ERROR",
+            "Year should be less than or equal to the current year -> '" + Year.now().getValue() + "'");
+        flag = 1;
+      }
+    }
+    if (flag == 1) {
+      errorMap.put("STATUS_CODE", 400);
+    }
+    return errorMap;
+  }
+}
@@ -0,0 +1,68 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+
+/**
+ * Minimal single threaded micro benchmark runner used by the *Benchmark
+ * classes. Each case is warmed up and then measured over a number of
+ * iterations, reporting the average time and the bytes allocated per
+ * operation on the calling thread.
+ *
+ * This is not JMH: there are no forks, no blackholes beyond a volatile sink
+ * and no error bounds, so the numbers are rough smoke timings. They are good
+ * enough to spot an order of magnitude or an allocation regression between
+ * two runs on the same machine, not to quote small differences. The request
+ * hot path is measured with JMH in the benchmarks module.
+ *
+ * Run a benchmark from its main method, e.g. with the test classpath:
+ * {@code java -cp build/test-classes:build/classes:<libs> JsonSerializationBenchmark}
+ */
+class MicroBenchmark {
+
+  private static final int WARMUP_ITERATIONS = 5;
+  private static final int MEASUREMENT_ITERATIONS = 10;
+  private static final long ITERATION_NANOS = 200_000_000L;
+
+  /** Prevents the JIT from eliminating the benchmarked code. */
+  private static volatile Object sink;
+
+  static void run(String name, Callable<?> operation) throws Exception {
+    long operationsPerIteration = calibrate(operation);
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      iterate(operation, operationsPerIteration);
+    }
+    long bytesBefore = allocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+      iterate(operation, operationsPerIteration);
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = allocatedBytes() - bytesBefore;
+    long operations = operationsPerIteration * MEASUREMENT_ITERATIONS;
+    System.out.printf("%-50s %12.1f ns/op %12.1f B/op%n", name, (double) elapsed / operations,
+        bytesBefore < 0 ? Double.NaN : (double) allocated / operations);
+  }
+
+  private static long calibrate(Callable<?> operation) throws Exception {
+    long operations = 0;
+    long start = System.nanoTime();
+    while (System.nanoTime() - start < ITERATION_NANOS) {
+      sink = operation.call();
+      operations++;
+    }
+    return Math.max(operations, 1);
+  }
+
+  private static void iterate(Callable<?> operation, long operations) throws Exception {
+    for (long i = 0; i < operations; i++) {
+      sink = operation.call();
+    }
+  }
+
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
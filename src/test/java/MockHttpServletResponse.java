@@ -1,3 +1,4 @@
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -5,6 +6,7 @@ import java.util.Collection;
 import java.util.Locale;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletResponse;
@@ -23,6 +25,27 @@ class MockHttpServletResponse implements HttpServletResponse {
   private String encoding;
   private StringWriter writerContent = new StringWriter();
   private PrintWriter writer = new PrintWriter(writerContent);
+  private ByteArrayOutputStream outputStreamContent = new ByteArrayOutputStream();
+  private ServletOutputStream outputStream = new ServletOutputStream() {
+    @Override
+    public void write(int b) throws IOException {
+      outputStreamContent.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      outputStreamContent.write(b, off, len);
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+    }
+  };
 
   @Override
   public void setContentType(String contentType) {
@@ -43,6 +66,15 @@ class MockHttpServletResponse implements HttpServletResponse {
     return writerContent;
   }
 
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    return outputStream;
+  }
+
+  public ByteArrayOutputStream getOutputStreamContent() {
+    return outputStreamContent;
+  }
+
   // anything below is the default generated implementation
 
   @Override
@@ -64,11 +96,6 @@ class MockHttpServletResponse implements HttpServletResponse {
     return null;
   }
 
-  @Override
-  public ServletOutputStream getOutputStream() throws IOException {
-    return null;
-  }
-
   @Override
   public boolean isCommitted() {
     return false;